@@ -0,0 +1,9 @@
+uniform mat4 u_projTrans; // World to screen, camera included
+uniform float u_halfWidth; // Half a line's width in world units
+
+attribute vec2 a_position;
+attribute vec2 a_normal; // Side of the line a vertex is pushed to, zero for Areas
+
+void main() {
+    gl_Position = u_projTrans * vec4(a_position + a_normal * u_halfWidth, 0.0, 1.0);
+}
@@ -25,7 +25,7 @@ import static java.lang.Math.round;
 public class AnimationScreen extends ScreenAdapter implements InputProcessor {
     public static final int DEFAULT_UNIT_WIDTH = 75;
     public static final int DEFAULT_UNIT_HEIGHT = 75;
-    public static final double LINE_RESOLUTION = 2.5; // Pixels per straight line
+    public static final double LINE_RESOLUTION = 5.0; // Pixels per straight line. Node collection samples are evenly spaced along the curve, so this can be coarse
     public static final int MAX_LINES = 5000;
 
     WarAnimationMaker game; // Contains some variables common to all screens
@@ -83,7 +83,7 @@ public class AnimationScreen extends ScreenAdapter implements InputProcessor {
         orthographicCamera.position.set(DISPLAY_WIDTH / 2.0f, DISPLAY_HEIGHT / 2.0f, 0);
         animation.camera();
         // Graphics init
-        drawer = new Drawer(game.bitmapFont, game.fontShader, game.batcher, game.shapeDrawer, orthographicCamera, animation.getInitTime());
+        drawer = new Drawer(game.bitmapFont, game.fontShader, game.meshShader, game.batcher, game.shapeDrawer, orthographicCamera, animation.getInitTime());
 
         // Animation init
         time = 0;//animation.getInitTime();
@@ -168,7 +168,11 @@ public class AnimationScreen extends ScreenAdapter implements InputProcessor {
     }
 
     public static boolean onScreen(Coordinate coordinate) {
-        return (coordinate.getX() >= 0 && coordinate.getY() >= 0) && (coordinate.getX() < DISPLAY_WIDTH) && (coordinate.getY() < DISPLAY_HEIGHT);
+        return onScreen(coordinate.getX(), coordinate.getY(), 0);
+    }
+
+    public static boolean onScreen(float x, float y, float margin) { // Whether anything drawn within margin pixels of the screen position (x, y) can be seen
+        return (x >= -margin && y >= -margin) && (x < DISPLAY_WIDTH + margin) && (y < DISPLAY_HEIGHT + margin);
     }
 
     public void updateCam() {
@@ -348,10 +352,11 @@ public class AnimationScreen extends ScreenAdapter implements InputProcessor {
                 ((InterpolatedObject) object).newSetPoint(time, mouseX, mouseY);
             }
             if (object.getClass() == Node.class) {
-                ((Node) object).setPosition(new Coordinate(mouseX, mouseY));
                 for (NodeCollection parent : animation.getParents((Node) object)) {
-                    parent.getInterpolator().updateInterpolationFunction();
+                    parent.detachHolds(((Node) object).getInitTime(), animation); // Set points holding the node's keep it where it was
+                    parent.getInterpolator().invalidateInterpolationFunction();
                 }
+                ((Node) object).setPosition(new Coordinate(mouseX, mouseY));
             }
         }
     }
@@ -619,6 +624,11 @@ public class AnimationScreen extends ScreenAdapter implements InputProcessor {
         FileHandler.INSTANCE.save();
     }
 
+    @Override
+    public void hide() {
+        drawer.dispose();
+    }
+
     private void updateTime(int newTime) {
         time = newTime;
         animation.update(time, orthographicCamera, false);
@@ -660,12 +670,21 @@ public class AnimationScreen extends ScreenAdapter implements InputProcessor {
                     ((InterpolatedObject) selectedObject).holdPositionUntil(time);
                 }
                 if (selectedObject.getClass() == NodeCollection.class) {
-                    ((NodeCollection) selectedObject).getInterpolator().holdValueUntil(time, animation);
+                    ((NodeCollection) selectedObject).holdValueUntil(time);
                 }
             }
             clearSelected();
             return null;
         }, "Hold last defined position to this time", Input.Keys.H).requiresSelected(Requirement.REQUIRES).build());
+        actions.add(Action.createBuilder(() -> {
+            for (AnyObject selectedObject : selectedObjects) {
+                if (selectedObject.getClass() == NodeCollection.class) {
+                    ((NodeCollection) selectedObject).makeHeldEditable(time, animation);
+                }
+            }
+            clearSelected();
+            return null;
+        }, "Make held node collection editable at this time", Input.Keys.H).requiresSelected(Requirement.REQUIRES).requiresShift(true).build());
         // Does not care about selection
         actions.add(Action.createBuilder(() -> {
             updateTime((time / 200) * 200 + 200);
@@ -731,6 +750,11 @@ public class AnimationScreen extends ScreenAdapter implements InputProcessor {
             System.out.println("saved");
             return null;
         }, "Save project", Input.Keys.S).requiresControl(true).build());
+        actions.add(Action.createBuilder(() -> {
+            int shapes = ShapeImporter.INSTANCE.importFolder(animation, time, orthographicCamera.position.x, orthographicCamera.position.y, DISPLAY_WIDTH / orthographicCamera.zoom, DISPLAY_HEIGHT / orthographicCamera.zoom); // Fits the shapes to the current view
+            System.out.println("Imported " + shapes + " shapes");
+            return null;
+        }, "Import shapes from the imports folder at this time, fitted to the view", Input.Keys.I).requiresControl(true).build());
         actions.add(Action.createBuilder(() -> {
             animation.camera().getZoomInterpolator().newSetPoint(time, orthographicCamera.zoom);
             return null;
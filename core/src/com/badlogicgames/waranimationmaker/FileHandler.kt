@@ -41,7 +41,7 @@ object FileHandler {
 
             kotlin.runCatching {
                 file.writeText(
-                    gson.toJson(it)
+                    toJson(it)
                 )
             }.onFailure { x ->
                 x.printStackTrace()
@@ -50,6 +50,14 @@ object FileHandler {
         }
     }
 
+    fun toJson(animation: Animation): String {
+        return gson.toJson(animation)
+    }
+
+    fun fromJson(content: String): Animation {
+        return gson.fromJson(content, Animation::class.java)
+    }
+
     fun createNewAnimation(animation: Animation) {
         animations.add(animation)
         save()
@@ -59,7 +67,7 @@ object FileHandler {
         animationsFolder.listFiles()?.forEach {
             val content = it.readText()
             kotlin.runCatching {
-                gson.fromJson(content, Animation::class.java)
+                fromJson(content)
                     .apply {
                         if (animations.any { animation -> animation.name == name })
                         {
@@ -0,0 +1,378 @@
+package com.badlogicgames.waranimationmaker
+
+import com.badlogic.gdx.utils.FloatArray
+import com.badlogic.gdx.utils.IntArray
+import com.badlogicgames.waranimationmaker.models.*
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import java.io.File
+import java.io.Reader
+import kotlin.math.min
+
+// Imports polylines and polygons from GeoJSON, WKT and CSV files as node collections. Points and MultiPoints are skipped, they have no outline
+// The inner rings of a polygon become outline only collections in the holes of the collection made from its outer ring
+// Files are streamed point by point and every shape is added without rebuilding topology, which is built once at the end
+object ShapeImporter {
+    private val importsFolder by lazy {
+        val file = File("imports")
+        if (!file.exists()) {
+            file.mkdirs()
+        }
+        file
+    }
+
+    // Imports every file in the imports folder, returns how many shapes were added
+    // Files are usually in map units like degrees of longitude and latitude, so everything imported is scaled and moved together to fit the given rectangle of world space, keeping its aspect ratio
+    fun importFolder(animation: Animation, time: Int, centerX: Float, centerY: Float, width: Float, height: Float): Int {
+        return importFiles(importsFolder.listFiles()?.sortedBy { it.name } ?: listOf(), animation, time, centerX, centerY, width, height)
+    }
+
+    fun importFiles(files: List<File>, animation: Animation, time: Int, centerX: Float, centerY: Float, width: Float, height: Float): Int {
+        val builder = ShapeBuilder(animation, time)
+        files.forEach {
+            kotlin.runCatching {
+                importFile(it, builder)
+            }.onFailure { x ->
+                x.printStackTrace()
+                println("couldnt import ${it.name}")
+            }
+        }
+
+        builder.fit(centerX, centerY, width, height)
+        animation.nodeEdgeHandler.updateNodeCollections(time, builder.collectionIDs)
+        return builder.collectionIDs.size
+    }
+
+    private fun importFile(file: File, builder: ShapeBuilder) {
+        val shapes = builder.collectionIDs.size
+        val skipped = builder.skipped
+
+        file.bufferedReader().use { reader ->
+            when (file.extension.lowercase()) {
+                "json", "geojson" -> readGeoJson(JsonReader(reader), builder)
+                "wkt" -> readWkt(reader, builder)
+                "csv", "txt" -> readCsv(reader, builder)
+                else -> println("Unknown shape file type: ${file.name}")
+            }
+        }
+        builder.commit()
+
+        println("Imported ${builder.collectionIDs.size - shapes} shapes from ${file.name}")
+        if (builder.skipped > skipped) {
+            println("Skipped ${builder.skipped - skipped} Point and MultiPoint geometries in ${file.name}")
+        }
+    }
+
+    // GeoJSON: every "coordinates" member is read, whatever geometry or feature it belongs to. Arrays of positions become shapes
+    // "type" may come after "coordinates", so the shapes of an object are only added once the whole object has been read
+    private fun readGeoJson(reader: JsonReader, builder: ShapeBuilder) {
+        when (reader.peek()) {
+            JsonToken.BEGIN_OBJECT -> {
+                reader.beginObject()
+                var type: String? = null
+                var hasCoordinates = false
+                while (reader.hasNext()) {
+                    val name = reader.nextName()
+                    if (name == "coordinates") {
+                        if (readCoordinates(reader, builder)) { // A lone Point
+                            builder.endShape()
+                        }
+                        hasCoordinates = true
+                    } else if (name == "type" && reader.peek() == JsonToken.STRING) {
+                        type = reader.nextString()
+                    } else {
+                        readGeoJson(reader, builder)
+                    }
+                }
+                reader.endObject()
+                if (hasCoordinates) {
+                    if (type == "Point" || type == "MultiPoint") {
+                        builder.discard()
+                    } else {
+                        builder.commit(type == "Polygon" || type == "MultiPolygon")
+                    }
+                }
+            }
+            JsonToken.BEGIN_ARRAY -> {
+                reader.beginArray()
+                while (reader.hasNext()) {
+                    readGeoJson(reader, builder)
+                }
+                reader.endArray()
+            }
+            else -> reader.skipValue()
+        }
+    }
+
+    private fun readCoordinates(reader: JsonReader, builder: ShapeBuilder): Boolean { // Returns true if the array read was a single position
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue()
+            return false
+        }
+
+        reader.beginArray()
+        if (reader.peek() == JsonToken.NUMBER) {
+            val x = reader.nextDouble()
+            val y = reader.nextDouble()
+            while (reader.hasNext()) { // Altitude
+                reader.skipValue()
+            }
+            reader.endArray()
+            builder.point(x, y)
+            return true
+        }
+
+        var hasPositions = false
+        while (reader.hasNext()) {
+            if (readCoordinates(reader, builder)) {
+                hasPositions = true
+            }
+        }
+        reader.endArray()
+        if (hasPositions) { // A LineString or a polygon ring
+            builder.endShape()
+        } else { // The rings of a polygon, or the lines of a MultiLineString
+            builder.endGroup()
+        }
+        return false
+    }
+
+    // WKT: numbers are collected until a comma or closing bracket, and a bracket that contained positions ends a shape
+    // Keywords are only needed to skip POINT and MULTIPOINT. A bracket with a word before it starts a geometry, whose shapes are added or dropped when it closes
+    private fun readWkt(reader: Reader, builder: ShapeBuilder) {
+        val number = StringBuilder()
+        val coordinates = DoubleArray(2)
+        var coordinateCount = 0
+        val levelHasPositions = ArrayDeque<Boolean>()
+        val word = StringBuilder()
+        var keyword: String? = null // First word since the last bracket or comma
+        val levelKeywords = ArrayDeque<String?>()
+
+        fun endWord() {
+            if (word.isNotEmpty()) {
+                if (keyword == null) {
+                    keyword = word.toString().uppercase()
+                }
+                word.setLength(0)
+            }
+        }
+
+        fun endNumber() {
+            if (number.isNotEmpty()) {
+                val value = number.toString().toDoubleOrNull()
+                if (value != null && coordinateCount < 2) {
+                    coordinates[coordinateCount] = value
+                }
+                coordinateCount++
+                number.setLength(0)
+            }
+        }
+
+        fun endPosition() {
+            endNumber()
+            if (coordinateCount >= 2 && levelHasPositions.isNotEmpty()) {
+                builder.point(coordinates[0], coordinates[1])
+                levelHasPositions.removeLast()
+                levelHasPositions.addLast(true)
+            }
+            coordinateCount = 0
+        }
+
+        while (true) {
+            val c = reader.read()
+            if (c == -1) {
+                break
+            }
+            val char = c.toChar()
+            when {
+                char == '(' -> {
+                    endWord()
+                    levelHasPositions.addLast(false)
+                    levelKeywords.addLast(keyword)
+                    keyword = null
+                    coordinateCount = 0
+                }
+                char == ')' -> {
+                    endWord()
+                    endPosition()
+                    if (levelHasPositions.isNotEmpty() && levelHasPositions.removeLast()) {
+                        builder.endShape()
+                    } else {
+                        builder.endGroup()
+                    }
+                    val type = levelKeywords.removeLastOrNull()
+                    if (type == "POINT" || type == "MULTIPOINT") { // The end of a geometry
+                        builder.discard()
+                    } else if (type != null) {
+                        builder.commit(type == "POLYGON" || type == "MULTIPOLYGON")
+                    }
+                    keyword = null
+                }
+                char == ',' -> {
+                    endWord()
+                    endPosition()
+                    keyword = null
+                }
+                char.isDigit() || char == '-' || char == '+' || char == '.' || ((char == 'e' || char == 'E') && number.isNotEmpty()) -> number.append(char)
+                char.isLetter() -> {
+                    endNumber()
+                    word.append(char)
+                }
+                else -> { // Whitespace
+                    endNumber()
+                    endWord()
+                }
+            }
+        }
+    }
+
+    // CSV: one "x,y" point per line. A blank line, or a change in an optional third column naming the shape, starts a new shape. Lines that are not numbers, like headers, are skipped
+    private fun readCsv(reader: Reader, builder: ShapeBuilder) {
+        var shapeName: String? = null
+
+        reader.buffered().useLines { lines ->
+            for (line in lines) {
+                val columns = line.split(',', ';', '\t')
+                if (line.isBlank()) {
+                    builder.endShape()
+                    continue
+                }
+
+                val x = columns[0].trim().toDoubleOrNull()
+                val y = columns.getOrNull(1)?.trim()?.toDoubleOrNull()
+                if (x == null || y == null) {
+                    continue
+                }
+
+                val name = columns.getOrNull(2)?.trim()
+                if (name != shapeName) {
+                    builder.endShape()
+                    shapeName = name
+                }
+                builder.point(x, y)
+            }
+        }
+        builder.endShape()
+    }
+
+    // Points are read in file units. Ended shapes wait until commit turns them into node collections, or discard drops them
+    // Shapes are grouped by the brackets around them, so a polygon's rings are a group whose first shape is the outer ring
+    private class ShapeBuilder(val animation: Animation, val time: Int) {
+        val collectionIDs = mutableSetOf<Int>()
+        var skipped = 0 // Geometries dropped by discard
+            private set
+        private val points = FloatArray()
+        private val shapeEnds = IntArray() // End of each ended shape in points
+        private val groupEnds = IntArray() // Shape count at the end of each group
+        private val nodes = mutableListOf<Node>() // Every node created, moved into place by fit
+        private val bounds = Bounds()
+
+        fun point(x: Double, y: Double) {
+            points.add(x.toFloat(), y.toFloat())
+        }
+
+        fun endShape() {
+            if (points.size > (if (shapeEnds.isEmpty) 0 else shapeEnds.peek())) {
+                shapeEnds.add(points.size)
+            }
+        }
+
+        fun endGroup() {
+            if (shapeEnds.size > (if (groupEnds.isEmpty) 0 else groupEnds.peek())) {
+                groupEnds.add(shapeEnds.size)
+            }
+        }
+
+        fun discard() {
+            if (shapeEnds.notEmpty()) {
+                skipped++
+            }
+            clear()
+        }
+
+        // Turns the ended shapes into nodes joined by edges of new node collections. Points after the last ended shape are dropped
+        // With polygons, the closed shapes after the first of a group are added as its holes
+        fun commit(polygons: Boolean = false) {
+            var shape = 0
+            for (group in 0..groupEnds.size) {
+                val groupEnd = if (group < groupEnds.size) groupEnds[group] else shapeEnds.size
+                val outer = if (polygons && shape < groupEnd) addShape(shape++, false) else null
+                while (shape < groupEnd) {
+                    val hole = addShape(shape++, outer?.type == "Area")
+                    if (hole != null && hole.type == "None") {
+                        outer!!.holes.add(hole.id.value)
+                    }
+                }
+            }
+            clear()
+        }
+
+        private fun clear() {
+            points.clear()
+            shapeEnds.clear()
+            groupEnds.clear()
+        }
+
+        private fun addShape(shape: Int, hole: Boolean): NodeCollection? { // Returns the new node collection, if the shape had enough points
+            val start = if (shape == 0) 0 else shapeEnds[shape - 1]
+            val end = shapeEnds[shape]
+            var count = (end - start) / 2
+            val closed = count > 2 && points[start] == points[end - 2] && points[start + 1] == points[end - 1]
+            if (closed) { // Rings repeat their first point, the loop is closed with an edge instead
+                count--
+            }
+            if (count < 2) {
+                return null
+            }
+
+            val nodeCollection = NodeCollection(NodeCollectionID(animation.nodeCollectionID))
+            animation.nodeCollectionID++
+            nodeCollection.type = if (closed && hole) "None" else if (closed) "Area" else "Line" // Holes are only cut out, not drawn
+            nodeCollection.buildInputs()
+            animation.addNodeCollection(nodeCollection)
+
+            val first = newNode(points[start], points[start + 1])
+            var previous = first
+            for (index in 1 until count) {
+                val node = newNode(points[start + index * 2], points[start + index * 2 + 1])
+                link(previous, node, nodeCollection.id)
+                previous = node
+            }
+            if (closed) {
+                link(previous, first, nodeCollection.id)
+            }
+
+            collectionIDs.add(nodeCollection.id.value)
+            return nodeCollection
+        }
+
+        private fun newNode(x: Float, y: Float): Node {
+            bounds.include(x, y)
+            return animation.newNode(x, y, time).also { nodes.add(it) }
+        }
+
+        fun fit(centerX: Float, centerY: Float, width: Float, height: Float) { // Scales and moves every created node so their bounds fill the rectangle
+            if (nodes.isEmpty()) {
+                return
+            }
+            val boundsWidth = bounds.maxX - bounds.minX
+            val boundsHeight = bounds.maxY - bounds.minY
+            val scale = when {
+                boundsWidth > 0 && boundsHeight > 0 -> min(width / boundsWidth, height / boundsHeight)
+                boundsWidth > 0 -> width / boundsWidth
+                boundsHeight > 0 -> height / boundsHeight
+                else -> 1f
+            }
+            val middleX = (bounds.minX + bounds.maxX) / 2
+            val middleY = (bounds.minY + bounds.maxY) / 2
+            for (node in nodes) {
+                node.position.x = (node.position.x - middleX) * scale + centerX
+                node.position.y = (node.position.y - middleY) * scale + centerY
+            }
+        }
+
+        private fun link(from: Node, to: Node, id: NodeCollectionID) {
+            animation.nodeEdgeHandler.linkEdge(from, Edge(id.duplicate(), Pair(from.id.duplicate(), to.id.duplicate())).apply { updateScreenCoords(animation) })
+        }
+    }
+}
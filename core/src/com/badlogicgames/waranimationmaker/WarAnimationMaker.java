@@ -33,6 +33,7 @@ public class WarAnimationMaker extends Game {
 	public ShapeDrawer shapeDrawer;
 	public BitmapFont bitmapFont;
 	public ShaderProgram fontShader;
+	public ShaderProgram meshShader;
 	public Skin skin;
 	public InputMultiplexer multiplexer;
 	public FrameExporter frameExporter;
@@ -53,6 +54,11 @@ public class WarAnimationMaker extends Game {
 		if (!fontShader.isCompiled()) {
 			Gdx.app.error("fontShader", "compilation failed:\n" + fontShader.getLog());
 		}
+		meshShader = new ShaderProgram(Gdx.files.internal("assets/shaders/mesh.vert"), Gdx.files.internal("assets/shaders/mesh.frag"));
+
+		if (!meshShader.isCompiled()) {
+			Gdx.app.error("meshShader", "compilation failed:\n" + meshShader.getLog());
+		}
 		try {
 			skin = Assets.loadSkin(Gdx.files.internal("assets/skins/glassy/skin/glassy-ui.json").toString());
 		} catch (Exception e) {
@@ -76,6 +82,7 @@ public class WarAnimationMaker extends Game {
 	@Override
 	public void dispose() {
 		batcher.dispose();
+		meshShader.dispose();
 		if (frameExporter != null) {
 			frameExporter.dispose();
 		}
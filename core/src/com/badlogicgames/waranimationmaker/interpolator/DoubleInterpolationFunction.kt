@@ -0,0 +1,42 @@
+package com.badlogicgames.waranimationmaker.interpolator
+
+// Primitive counterpart of InterpolationFunction, keys and values are stored unboxed so evaluating never allocates
+abstract class DoubleInterpolationFunction(i: DoubleArray, o: DoubleArray) {
+    var i: DoubleArray
+    var o: DoubleArray
+    var size: Int // Number of knots in use. i and o may have spare capacity after it so knots can be added without reallocating
+
+    init {
+        require(i.size == o.size) { "The lengths of x and y must be the same." }
+        this.i = i
+        this.o = o
+        this.size = i.size
+    }
+
+    private var cursor = 0 // Segment found by the last lookup. Playback usually asks for the same or the next one
+
+    abstract fun init()
+
+    // Returns k such that i[k] <= at < i[k + 1]. at must lie in (i[0], i[size - 1]), callers handle the ends
+    protected fun segmentIndex(at: Double): Int {
+        val k = cursor
+        if (k < size - 1 && i[k] <= at) {
+            if (at < i[k + 1]) {
+                return k
+            }
+            if (k + 2 < size && at < i[k + 2]) {
+                cursor = k + 1
+                return cursor
+            }
+        }
+
+        var found = i.binarySearch(at, 0, size)
+        if (found < 0) {
+            found = -found - 2
+        }
+        cursor = found.coerceIn(0, size - 2)
+        return cursor
+    }
+
+    abstract fun evaluate(at: Double): Double
+}
@@ -7,10 +7,13 @@ interface HasSetPoints<I : Number, O> {
 
     fun updateInterpolationFunction()
 
+    // Called after every change to setPoints. The interpolation function is then rebuilt once on the next evaluation, so bulk edits only pay for one rebuild
+    fun invalidateInterpolationFunction()
+
     fun removeFrame(x: I): Boolean {
         if (setPoints.size > 1) {
             if (setPoints.remove(x) != null) { // Remove was successful or not
-                updateInterpolationFunction()
+                invalidateInterpolationFunction()
                 return true
             } else {
                 return false
@@ -22,7 +25,7 @@ interface HasSetPoints<I : Number, O> {
 
     fun newSetPoint(time: I, value: O) {
         setPoints[time] = value
-        updateInterpolationFunction()
+        invalidateInterpolationFunction()
     }
 
     fun newSetPoint(time: I, value: O, removeDuplicates: Boolean) {
@@ -35,6 +38,7 @@ interface HasSetPoints<I : Number, O> {
                     if (found) { // If the last set point already exists
                         if (setPoints[definedTime] == value) {
                             setPoints.remove(definedTime)
+                            invalidateInterpolationFunction()
                         } else {
                             return
                         }
@@ -65,7 +69,7 @@ interface HasSetPoints<I : Number, O> {
 
             if ((definedTime.toDouble() > time.toDouble()) && (prevTime != null)) { // If the input time is not defined but is in the defined period, modify the movement to stay at the position just before the input time until the input time
                 setPoints[time] = prevValue!!
-                updateInterpolationFunction()
+                invalidateInterpolationFunction()
 
                 println("Added hold frame: $setPoints")
                 return
@@ -76,6 +80,6 @@ interface HasSetPoints<I : Number, O> {
         }
         // If the input time was not in the defined period, add a movement to the end
         setPoints[time] = setPoints.values.last()
-        updateInterpolationFunction()
+        invalidateInterpolationFunction()
     }
 }
\ No newline at end of file
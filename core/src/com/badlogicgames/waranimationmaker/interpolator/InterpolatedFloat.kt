@@ -0,0 +1,83 @@
+package com.badlogicgames.waranimationmaker.interpolator
+
+import java.util.*
+
+// Float values through time backed by a DoubleInterpolationFunction, so updating never boxes
+abstract class InterpolatedFloat(initValue: Float, initTime: Int) : HasSetPoints<Int, Float> {
+    override var setPoints: SortedMap<Int, Float> = TreeMap()
+    @Transient var interpolationFunction: DoubleInterpolationFunction? = null
+    @Transient var value: Float = initValue
+    @Transient var setPointVersion = 0 // Incremented every time the set points change
+        private set
+    @Transient private var builtVersion = 0 // Set point version the interpolation function was last built from
+
+    abstract fun newInterpolationFunction(i: DoubleArray, o: DoubleArray): DoubleInterpolationFunction
+
+    override fun updateInterpolationFunction() {
+        val i = DoubleArray(setPoints.size)
+        val o = DoubleArray(setPoints.size)
+        var knot = 0
+        for ((time, value) in setPoints) {
+            i[knot] = time.toDouble()
+            o[knot] = value.toDouble()
+            knot++
+        }
+        interpolationFunction = newInterpolationFunction(i, o)
+        builtVersion = setPointVersion
+    }
+
+    override fun invalidateInterpolationFunction() {
+        setPointVersion++
+    }
+
+    protected fun interpolationFunctionCurrent() = interpolationFunction != null && builtVersion == setPointVersion
+
+    // For subclasses that patched their interpolation function in place instead of invalidating it
+    protected fun interpolationFunctionPatched() {
+        setPointVersion++
+        builtVersion = setPointVersion
+    }
+
+    private fun builtInterpolationFunction(): DoubleInterpolationFunction {
+        if (interpolationFunction == null || builtVersion != setPointVersion) { // Interpolator not serialized or set points changed
+            if (setPoints.isEmpty()) {
+                throw IllegalArgumentException("Set points can not be empty when update is called")
+            }
+            updateInterpolationFunction()
+        }
+        return interpolationFunction!!
+    }
+
+    fun evaluate(time: Int): Float { // Evaluates at time without changing value
+        return builtInterpolationFunction().evaluate(time.toDouble()).toFloat()
+    }
+
+    // Evaluates every step-th time from start to end inclusive into out and returns how many values were written
+    // Consecutive times land in the same or the next segment, so each lookup is resolved by the cursor
+    fun evaluateRange(start: Int, end: Int, step: Int, out: FloatArray): Int {
+        val function = builtInterpolationFunction()
+        val count = rangeSize(start, end, step)
+        for (index in 0 until count) {
+            out[index] = function.evaluate((start + index * step).toDouble()).toFloat()
+        }
+        return count
+    }
+
+    fun evaluateMany(times: IntArray, out: FloatArray, count: Int = times.size) { // Fastest when times is sorted
+        val function = builtInterpolationFunction()
+        for (index in 0 until count) {
+            out[index] = function.evaluate(times[index].toDouble()).toFloat()
+        }
+    }
+
+    fun update(time: Int): Float { // Updates value based on time and returns it
+        value = evaluate(time)
+        return value
+    }
+
+    companion object {
+        fun rangeSize(start: Int, end: Int, step: Int): Int { // Number of values evaluateRange writes
+            return if (end < start) 0 else (end - start) / step + 1
+        }
+    }
+}
@@ -6,13 +6,21 @@ abstract class InterpolatedValue<I : Number, O>(initValue: O, initTime: I) : Has
     abstract var interpolationFunction: InterpolationFunction<I, O>
     override var setPoints: SortedMap<I, O> = TreeMap()
     @Transient var value: O = initValue
+    @Transient var setPointVersion = 0 // Incremented every time the set points change
+        private set
+    @Transient private var builtVersion = 0 // Set point version the interpolation function was last built from
+
+    override fun invalidateInterpolationFunction() {
+        setPointVersion++
+    }
 
     open fun update(time: I): O { // Updates value based on time and returns it
         if (setPoints.isEmpty()) {
             throw IllegalArgumentException("Set points can not be empty when update is called")
         }
-        if (interpolationFunction == null) { // Interpolator not serialized
+        if (interpolationFunction == null || builtVersion != setPointVersion) { // Interpolator not serialized or set points changed
             updateInterpolationFunction()
+            builtVersion = setPointVersion
         }
 
         value = interpolationFunction.evaluate(time)
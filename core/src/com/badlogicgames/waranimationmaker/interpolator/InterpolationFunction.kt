@@ -10,7 +10,37 @@ abstract class InterpolationFunction<I : Number, O>(i: Array<I>, o: Array<O>) {
         this.o = o
     }
 
+    private var cursor = 0 // Segment found by the last lookup. Playback usually asks for the same or the next one
+
     abstract fun init()
 
+    // Returns k such that i[k] <= at < i[k + 1]. at must lie in (i[0], i[i.size - 1]), callers handle the ends
+    protected fun segmentIndex(at: Double): Int {
+        val k = cursor
+        if (k < i.size - 1 && i[k].toDouble() <= at) {
+            if (at < i[k + 1].toDouble()) {
+                return k
+            }
+            if (k + 2 < i.size && at < i[k + 2].toDouble()) {
+                cursor = k + 1
+                return cursor
+            }
+        }
+
+        // Binary search for the last key not greater than at
+        var low = 0
+        var high = i.size - 2
+        while (low < high) {
+            val mid = (low + high + 1) ushr 1
+            if (i[mid].toDouble() <= at) {
+                low = mid
+            } else {
+                high = mid - 1
+            }
+        }
+        cursor = low
+        return low
+    }
+
     abstract fun evaluate(at: I): O
 }
@@ -0,0 +1,22 @@
+package com.badlogicgames.waranimationmaker.interpolator
+
+class LinearDoubleInterpolationFunction(i: DoubleArray, o: DoubleArray) : DoubleInterpolationFunction(i, o) {
+
+    override fun evaluate(at: Double): Double {
+        val x = i
+        val y = o
+        if (at <= x[0]) {
+            return y[0]
+        }
+        if (at >= x[size - 1]) {
+            return y[size - 1]
+        }
+
+        val k = segmentIndex(at)
+        return y[k] + (y[k + 1] - y[k]) * (at - x[k]) / (x[k + 1] - x[k])
+    }
+
+    override fun init() {
+
+    }
+}
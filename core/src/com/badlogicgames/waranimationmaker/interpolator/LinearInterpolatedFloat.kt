@@ -1,30 +1,11 @@
 package com.badlogicgames.waranimationmaker.interpolator
 
-import com.badlogicgames.waranimationmaker.utilities.toDoubleArray
-
-class LinearInterpolatedFloat(initValue: Float, initTime: Int) : InterpolatedValue<Int, Float>(initValue, initTime) {
-
-    @Transient
-    override var interpolationFunction = LinearInterpolationFunction(
-        arrayOf(initTime.toDouble()),
-        arrayOf(initValue.toDouble())
-    ).map({
-        it.toInt()
-    }, {
-        it.toFloat()
-    }, {
-        it.toDouble()
-    })
+class LinearInterpolatedFloat(initValue: Float, initTime: Int) : InterpolatedFloat(initValue, initTime) {
 
     init {
         setPoints[initTime] = initValue
         updateInterpolationFunction()
     }
 
-    override fun updateInterpolationFunction() {
-        interpolationFunction = LinearInterpolationFunction(
-            setPoints.keys.toDoubleArray(),
-            setPoints.values.toDoubleArray()
-        ).map({ it.toInt() }, { it.toFloat() }, { it.toDouble() })
-    }
-}
\ No newline at end of file
+    override fun newInterpolationFunction(i: DoubleArray, o: DoubleArray) = LinearDoubleInterpolationFunction(i, o)
+}
@@ -17,10 +17,7 @@ public class LinearInterpolationFunction<I extends Number> extends Interpolation
             return y[y.length - 1];
         }
 
-        int i = 0;
-        while (at.doubleValue() > x[i+1].doubleValue()) {
-            i++;
-        }
+        int i = segmentIndex(at.doubleValue());
 
         I x0 = x[i];
         I x1 = x[i+1];
@@ -3,107 +3,351 @@ package com.badlogicgames.waranimationmaker.interpolator
 import com.badlogicgames.waranimationmaker.AnimationScreen
 import com.badlogicgames.waranimationmaker.models.*
 import java.util.*
+import kotlin.math.max
 import kotlin.math.round
 
 class NodeCollectionInterpolator : HasSetPoints<Int, NodeCollectionSetPoint> {
     override var setPoints: SortedMap<Int, NodeCollectionSetPoint> = TreeMap()
     var coordinates: Array<Coordinate> = arrayOf()
+    var setPointVersion = 0 // Incremented every time the set points change so caches know to rebuild
+        private set
+    var coordinatesVersion = 0 // Incremented every time coordinates change, so caches built from them know to rebuild
+        private set
+    private var interpolatorsVersion = 0 // Set point version the set points' interpolators were last built from
+    // Frame coordinates were last evaluated for. While paused the same frame is requested every render and can be returned as is
+    private var evaluatedVersion = -1
+    private var evaluatedTime = 0
+    private var evaluatedTolerance: Float? = null
+    private var evaluatedLevel = 0
+    // Plan, interval, local time and point count the coordinates were last computed from. A new time that lands on the same frame, like one outside the set points or inside a held interval, leaves them as they are
+    private var computedPlan = -1
+    private var computedLevel = -1
+    private var computedInterval = -1
+    private var computedLocal = 0.0
+    private var computedCount = -1
+    private var planStamp = 0 // Incremented every time the morph plan is rebuilt
+
+    // Morph plan: every set point resampled at a shared grid of parameters, with the time direction PCHIP through them expanded into cubic coefficients
+    // Rebuilt once per set point version or sampling change. Stored as [((interval * samples + sample) * 4) + power], highest power first, so a frame reads one contiguous block
+    private var plannedVersion = -1
+    private var plannedTolerance: Float? = null
+    private var planParameters = DoubleArray(0)
+    private var planTimes = DoubleArray(0)
+    private var planLengths = DoubleArray(0) // Length of each set point's curve
+    private var planX = DoubleArray(0)
+    private var planY = DoubleArray(0)
+    private var staticIntervals = BooleanArray(0) // Intervals where every sample stays still, like between a set point and the hold of it
+
+    // Coarser plans for zoomed out frames, built on demand from the full plan. Level n keeps only the grid samples Douglas-Peucker needs to keep every set point within LOD_TOLERANCE pixels on screen at zoom 1 / 2^n
+    private class LevelPlan(val samples: Int, val x: DoubleArray, val y: DoubleArray)
+    private var levelPlans = arrayOfNulls<LevelPlan>(MAX_LOD_LEVEL + 1)
+
+    // Set point interval and position within it of the frame being evaluated, the same for every sample
+    private var interval = 0
+    private var local = 0.0
+
+    // Grid samples of the frame being evaluated
+    private var frameX = DoubleArray(0)
+    private var frameY = DoubleArray(0)
 
     override fun updateInterpolationFunction() {
         setPoints.values.forEach { it.updateInterpolators() }
+        interpolatorsVersion = setPointVersion
     }
 
-    fun evaluate(time: Int): Array<Coordinate> {
-        var num = 0
+    override fun invalidateInterpolationFunction() {
+        setPointVersion++
+    }
 
-        coordinates = arrayOf()
-        if (setPoints.isNotEmpty()) {
-            if (setPoints.containsKey(time)) {
-                num = round((setPoints[time]?.length ?: 0.0) / AnimationScreen.LINE_RESOLUTION).toInt()
+    private fun sampleCount(time: Int): Int { // Points to draw when sampling evenly, from the length interpolated over the frame's interval. Nothing is drawn before the first set point
+        if (time < planTimes[0]) {
+            return 0
+        }
+        val count = planTimes.size
+        val length = if (count < 2) planLengths[0] else planLengths[interval] + (planLengths[interval + 1] - planLengths[interval]) * local
+        return round(length / AnimationScreen.LINE_RESOLUTION).toInt().coerceIn(0..AnimationScreen.MAX_LINES)
+    }
+
+    private fun uniformParameters(frames: List<NodeCollectionSetPoint>): DoubleArray {
+        // Samples are spaced evenly along the longest set point's curve instead of evenly in parameter, so no stretch of it is over or under sampled
+        var reference = frames.first()
+        for (frame in frames) {
+            if (frame.length > reference.length) {
+                reference = frame
+            }
+        }
+        val samples = round(reference.length / AnimationScreen.LINE_RESOLUTION).toInt().coerceIn(1..AnimationScreen.MAX_LINES)
+
+        return DoubleArray(samples + 1) { sample ->
+            if (reference.arcLength > 0.0) {
+                reference.parameterAtDistance(reference.arcLength * sample / samples)
             } else {
-                if (setPoints.size < 2) {
-                    num = round((setPoints.values.first().length / AnimationScreen.LINE_RESOLUTION)).toInt()
-                } else {
-                    var index = 0
-                    var time0 = 0
-                    var length0 = 0.0
-                    var found = false
-
-                    for (frame in setPoints) {
-                        if (found) {
-                            val deltaTime = frame.value.time - time0
-                            num =
-                                round((length0 + ((time - time0).toDouble() / deltaTime) * (frame.value.length - length0)) / AnimationScreen.LINE_RESOLUTION).toInt()
-                            break
-                        }
-                        if (frame.key < time) {
-                            time0 = frame.value.time
-                            length0 = frame.value.length
-                            found = true
-                        }
-                        index++
-                    }
-                }
+                sample.toDouble() / samples
             }
+        }
+    }
 
-            num = num.coerceIn(0..AnimationScreen.MAX_LINES)
+    private fun adaptiveParameters(frames: List<NodeCollectionSetPoint>, tolerance: Float): DoubleArray {
+        // Every set point must stay within tolerance, so take the union of the parameters each one needs
+        val merged = frames.flatMap { it.adaptiveParameters(tolerance.toDouble()).asList() }.sorted()
+        val parameters = mutableListOf<Double>()
+        for (parameter in merged) {
+            if (parameters.isEmpty() || parameter - parameters.last() > 1e-9) {
+                parameters.add(parameter)
+            }
+        }
 
-            val parameter = Array(num) { index -> index.toDouble() / num }
-            val coordinates = mutableListOf<Coordinate>()
+        if (parameters.size > AnimationScreen.MAX_LINES + 1) {
+            return DoubleArray(AnimationScreen.MAX_LINES + 1) { parameters[(it.toLong() * (parameters.size - 1) / AnimationScreen.MAX_LINES).toInt()] }
+        }
+        return parameters.toDoubleArray()
+    }
+
+    private fun buildMorphPlan(tolerance: Float?) { // tolerance is in world units, null for even sampling. For every parameter sample, evaluate every set point through space once and expand the PCHIP through time into per interval cubics
+        val frames = setPoints.values.toList()
+        val count = frames.size
+        val intervals = max(count - 1, 1)
+
+        planParameters = if (tolerance != null) adaptiveParameters(frames, tolerance) else uniformParameters(frames)
+        planTimes = setPoints.keys.map { it.toDouble() }.toDoubleArray()
+        planLengths = frames.map { it.length }.toDoubleArray()
+        val samples = planParameters.size
+        planX = DoubleArray(intervals * samples * 4)
+        planY = DoubleArray(intervals * samples * 4)
+        frameX = DoubleArray(samples)
+        frameY = DoubleArray(samples)
+
+        val xColumn = DoubleArray(count)
+        val yColumn = DoubleArray(count)
+        val xSlopes = DoubleArray(count)
+        val ySlopes = DoubleArray(count)
+        staticIntervals = BooleanArray(intervals) { true }
 
-            for (i in 0 until num) { // For every point to draw, build an interpolator for the point which evaluates from a specific parameter value (0 to 1) through time
-                val xInTime = Array(setPoints.size) { 0.0 }
-                val yInTime = Array(setPoints.size) { 0.0 }
+        for (sample in 0 until samples) {
+            val parameter = planParameters[sample]
+            for (index in 0 until count) {
+                // frames[index]'s interpolators are through space at a specific time
+                xColumn[index] = frames[index].xInterpolator.evaluate(parameter)
+                yColumn[index] = frames[index].yInterpolator.evaluate(parameter)
+            }
+            PCHIPInterpolationFunction.computeSlopes(planTimes, xColumn, xSlopes)
+            PCHIPInterpolationFunction.computeSlopes(planTimes, yColumn, ySlopes)
 
-                var index = 0
-                for (frame in setPoints) {
-                    // frame.value's interpolators are through space at a specific time
-                    xInTime[index] = frame.value.xInterpolator.evaluate(parameter[i])
-                    yInTime[index] = frame.value.yInterpolator.evaluate(parameter[i])
-                    index++
+            if (count == 1) { // A single set point never changes, only the constant term is used
+                planX[sample * 4 + 3] = xColumn[0]
+                planY[sample * 4 + 3] = yColumn[0]
+                continue
+            }
+            for (k in 0 until intervals) {
+                val h = planTimes[k + 1] - planTimes[k]
+                val base = (k * samples + sample) * 4
+                writeCubic(planX, base, xColumn[k], xColumn[k + 1], xSlopes[k] * h, xSlopes[k + 1] * h)
+                writeCubic(planY, base, yColumn[k], yColumn[k + 1], ySlopes[k] * h, ySlopes[k + 1] * h)
+                if (planX[base] != 0.0 || planX[base + 1] != 0.0 || planX[base + 2] != 0.0 || planY[base] != 0.0 || planY[base + 1] != 0.0 || planY[base + 2] != 0.0) {
+                    staticIntervals[k] = false
                 }
+            }
+        }
 
+        plannedVersion = setPointVersion
+        plannedTolerance = tolerance
+        planStamp++
+        levelPlans = arrayOfNulls(MAX_LOD_LEVEL + 1)
+    }
+
+    private fun zoomScale(zoom: Float): Float { // Smallest power of two that is at least zoom. Adaptive plans are built for it, so they are only rebuilt when zoom crosses a power of two
+        var scale = 1f
+        while (scale < zoom && scale < MAX_ZOOM_SCALE) {
+            scale *= 2
+        }
+        while (scale / 2 >= zoom && scale > 1f / (1 shl MAX_LOD_LEVEL)) {
+            scale /= 2
+        }
+        return scale
+    }
 
-                val xInterpolatorTime = PCHIPInterpolationFunction<Int>(setPoints.keys.toTypedArray(), xInTime.toDoubleArray())
-                val yInterpolatorTime = PCHIPInterpolationFunction<Int>(setPoints.keys.toTypedArray(), yInTime.toDoubleArray())
+    private fun levelOf(zoom: Float): Int { // Every halving of zoom below 1 halves the detail that can be seen
+        var level = 0
+        var scale = zoom
+        while (scale < 0.5f && level < MAX_LOD_LEVEL) {
+            scale *= 2
+            level++
+        }
+        return level
+    }
 
-                val coordinate =
-                    Coordinate(xInterpolatorTime.evaluate(time).toFloat(), yInterpolatorTime.evaluate(time).toFloat())
-                coordinates.add(coordinate)
+    private fun planValue(plan: DoubleArray, setPoint: Int, sample: Int): Double { // Position of one set point at one grid sample, read back from the plan's coefficients
+        val samples = planParameters.size
+        if (setPoint < planTimes.size - 1 || planTimes.size < 2) {
+            return plan[(setPoint * samples + sample) * 4 + 3]
+        }
+        val base = ((setPoint - 1) * samples + sample) * 4
+        return plan[base] + plan[base + 1] + plan[base + 2] + plan[base + 3]
+    }
+
+    private fun buildLevelPlan(level: Int): LevelPlan { // Keeps the grid samples any set point needs at this level and gathers their coefficients
+        val samples = planParameters.size
+        val count = planTimes.size
+        val intervals = max(count - 1, 1)
+        val tolerance = LOD_TOLERANCE * (1 shl level)
+
+        val keep = BooleanArray(samples)
+        val xs = DoubleArray(samples)
+        val ys = DoubleArray(samples)
+        for (setPoint in 0 until count) {
+            for (sample in 0 until samples) {
+                xs[sample] = planValue(planX, setPoint, sample)
+                ys[sample] = planValue(planY, setPoint, sample)
+            }
+            douglasPeucker(xs, ys, samples, tolerance, keep)
+        }
+
+        val kept = keep.count { it }
+        val x = DoubleArray(intervals * kept * 4)
+        val y = DoubleArray(intervals * kept * 4)
+        for (k in 0 until intervals) {
+            var index = 0
+            for (sample in 0 until samples) {
+                if (!keep[sample]) {
+                    continue
+                }
+                System.arraycopy(planX, (k * samples + sample) * 4, x, (k * kept + index) * 4, 4)
+                System.arraycopy(planY, (k * samples + sample) * 4, y, (k * kept + index) * 4, 4)
+                index++
             }
-            this.coordinates = coordinates.toTypedArray()
         }
+        return LevelPlan(kept, x, y)
+    }
 
-        return this.coordinates
+    private fun writeCubic(plan: DoubleArray, base: Int, y0: Double, y1: Double, m0: Double, m1: Double) { // Hermite segment as a cubic in the local time 0..1, slopes already scaled by the interval length
+        plan[base] = 2 * y0 + m0 - 2 * y1 + m1
+        plan[base + 1] = -3 * y0 - 2 * m0 + 3 * y1 - m1
+        plan[base + 2] = m0
+        plan[base + 3] = y0
     }
 
-    fun holdValueUntil(time: Int, animation: Animation) { // Special hold function for NodeCollectionInterpolator since values are objects (pointers), not literals
-        var prevTime: Int? = null
-        var prevValue: NodeCollectionSetPoint? = null
+    private fun prepareInterval(time: Int) { // The time interval is the same for every point, so find it once per frame. Outside the set points the nearest end is held
+        val count = planTimes.size
+        val at = time.toDouble()
+        interval = 0
+        local = 0.0
 
-        val frameTimes = setPoints.keys.toList()
+        if (count >= 2 && at >= planTimes[count - 1]) {
+            interval = count - 2
+            local = 1.0
+        } else if (count >= 2 && at > planTimes[0]) {
+            var k = planTimes.binarySearch(at)
+            if (k < 0) {
+                k = -k - 2
+            }
+            interval = k.coerceAtMost(count - 2)
+            local = (at - planTimes[interval]) / (planTimes[interval + 1] - planTimes[interval])
+        }
+        if (staticIntervals[interval]) { // Every local time gives the same frame
+            local = 0.0
+        }
+    }
 
-        for (i in frameTimes.indices) {
-            val definedTime = frameTimes[i]
+    private fun evaluateFrame(planX: DoubleArray, planY: DoubleArray, samples: Int) { // Single fused pass over the frame's block of the plan
+        val t = local
+        var base = interval * samples * 4
+        for (sample in 0 until samples) {
+            frameX[sample] = ((planX[base] * t + planX[base + 1]) * t + planX[base + 2]) * t + planX[base + 3]
+            frameY[sample] = ((planY[base] * t + planY[base + 1]) * t + planY[base + 2]) * t + planY[base + 3]
+            base += 4
+        }
+    }
 
-            if (definedTime == time) {
-                return
+    // adaptiveTolerance is the furthest, in pixels, the drawn outline may stray from the curve. It is turned into world units for the zoom's power of two, which is never below zoom, so the limit holds on screen
+    // When null, samples are spaced evenly every LINE_RESOLUTION pixels, and zoomed out past 1/2 a coarser level of detail is drawn
+    fun evaluate(time: Int, adaptiveTolerance: Float? = null, zoom: Float = 1f): Array<Coordinate> {
+        if (setPoints.isEmpty()) {
+            if (coordinates.isNotEmpty()) {
+                coordinates = arrayOf()
+                coordinatesVersion++
             }
+            computedPlan = -1
+            return coordinates
+        }
+
+        val tolerance = if (adaptiveTolerance != null) adaptiveTolerance / zoomScale(zoom) else null // World units
+        val level = if (tolerance != null) 0 else levelOf(zoom) // Adaptive plans already match the zoom
+        if (evaluatedVersion == setPointVersion && evaluatedTime == time && evaluatedTolerance == tolerance && evaluatedLevel == level) {
+            return coordinates
+        }
+        evaluatedVersion = setPointVersion
+        evaluatedTime = time
+        evaluatedTolerance = tolerance
+        evaluatedLevel = level
+
+        if (interpolatorsVersion != setPointVersion) {
+            updateInterpolationFunction()
+        }
+        if (plannedVersion != setPointVersion || plannedTolerance != tolerance) {
+            buildMorphPlan(tolerance)
+        }
+        prepareInterval(time)
+        val count = if (tolerance == null && level == 0) sampleCount(time) else -1
+        if (computedPlan == planStamp && computedLevel == level && computedInterval == interval && computedLocal == local && computedCount == count) {
+            return coordinates
+        }
+        computedPlan = planStamp
+        computedLevel = level
+        computedInterval = interval
+        computedLocal = local
+        computedCount = count
+        coordinatesVersion++
 
-            if ((definedTime > time) && (prevTime != null)) {
-                setPoints[time] = prevValue!!.duplicate(time, animation)
-                this.updateInterpolationFunction()
+        if (level > 0) { // The level's samples are already only the ones that can be seen, so draw every one of them
+            var levelPlan = levelPlans[level]
+            if (levelPlan == null) {
+                levelPlan = buildLevelPlan(level)
+                levelPlans[level] = levelPlan
+            }
+            evaluateFrame(levelPlan.x, levelPlan.y, levelPlan.samples)
+            if (coordinates.size != levelPlan.samples) {
+                coordinates = Array(levelPlan.samples) { Coordinate(0f, 0f) }
+            }
+            for (sample in 0 until levelPlan.samples) {
+                coordinates[sample].x = frameX[sample].toFloat()
+                coordinates[sample].y = frameY[sample].toFloat()
+            }
+            return coordinates
+        }
 
-                println("Added hold frame: $setPoints")
-                return
+        val samples = planParameters.size
+        evaluateFrame(planX, planY, samples)
+        if (tolerance != null) { // The adaptive grid already puts points only where the curve bends, so draw every one of them
+            if (coordinates.size != samples) {
+                coordinates = Array(samples) { Coordinate(0f, 0f) }
+            }
+            for (sample in 0 until samples) {
+                coordinates[sample].x = frameX[sample].toFloat()
+                coordinates[sample].y = frameY[sample].toFloat()
             }
+            return coordinates
+        }
+
+        val num = count
+        if (coordinates.size != num) {
+            coordinates = Array(num) { Coordinate(0f, 0f) }
+        }
+
+        for (i in 0 until num) { // For every point to draw, blend the two neighbouring grid samples
+            val position = i.toDouble() / num * (samples - 1)
+            val sample = position.toInt().coerceAtMost(samples - 2)
+            val fraction = position - sample
 
-            prevTime = definedTime
-            prevValue = setPoints[prevTime]
+            coordinates[i].x = (frameX[sample] + (frameX[sample + 1] - frameX[sample]) * fraction).toFloat()
+            coordinates[i].y = (frameY[sample] + (frameY[sample + 1] - frameY[sample]) * fraction).toFloat()
         }
 
-        setPoints[time] = setPoints.values.last().duplicate(time, animation)
-        this.updateInterpolationFunction()
-        print(setPoints)
+        return coordinates
+    }
+
+    companion object {
+        const val MAX_LOD_LEVEL = 6 // Coarsest level is used from zoom 1/64 out
+        const val LOD_TOLERANCE = 0.5 // Screen pixels a simplified outline may stray from the full one
+        const val MAX_ZOOM_SCALE = 64f // Zoomed in further, adaptive outlines keep the detail they have at this zoom
     }
-}
\ No newline at end of file
+}
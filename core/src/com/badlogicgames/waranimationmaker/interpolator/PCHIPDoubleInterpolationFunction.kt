@@ -0,0 +1,93 @@
+package com.badlogicgames.waranimationmaker.interpolator
+
+import kotlin.math.max
+import kotlin.math.min
+
+class PCHIPDoubleInterpolationFunction(i: DoubleArray, o: DoubleArray) : DoubleInterpolationFunction(i, o) {
+    private var slopes = DoubleArray(i.size)
+
+    init {
+        init()
+    }
+
+    override fun init() {
+        if (slopes.size != i.size) {
+            slopes = DoubleArray(i.size)
+        }
+        PCHIPInterpolationFunction.computeSlopes(i, o, slopes, size)
+    }
+
+    // Adds a knot at at, or changes the value of the knot already there. A PCHIP slope only depends on the neighbouring intervals, so only the slopes around the edit are recomputed
+    fun set(at: Double, value: Double) {
+        var k = i.binarySearch(at, 0, size)
+        if (k >= 0) {
+            o[k] = value
+        } else {
+            k = -k - 1
+            if (size == i.size) { // Out of spare capacity
+                val capacity = max(8, size * 2)
+                i = i.copyOf(capacity)
+                o = o.copyOf(capacity)
+                slopes = slopes.copyOf(capacity)
+            }
+            // Knots after k are shifted up by one. Set points are usually added at the end of the track, where there is nothing after k to shift
+            System.arraycopy(i, k, i, k + 1, size - k)
+            System.arraycopy(o, k, o, k + 1, size - k)
+            System.arraycopy(slopes, k, slopes, k + 1, size - k)
+            i[k] = at
+            o[k] = value
+            size++
+        }
+        updateSlopes(k - 1, k + 1)
+    }
+
+    // Removes the knot at at, returns whether there was one
+    fun remove(at: Double): Boolean {
+        val k = i.binarySearch(at, 0, size)
+        if (k < 0) {
+            return false
+        }
+        System.arraycopy(i, k + 1, i, k, size - k - 1)
+        System.arraycopy(o, k + 1, o, k, size - k - 1)
+        System.arraycopy(slopes, k + 1, slopes, k, size - k - 1)
+        size--
+        updateSlopes(k - 1, k)
+        return true
+    }
+
+    private fun updateSlopes(from: Int, to: Int) {
+        for (k in max(from, 0)..min(to, size - 1)) {
+            slopes[k] = if (k == 0 || k == size - 1) { // End points: 0 slope
+                0.0
+            } else {
+                PCHIPInterpolationFunction.knotSlope(i[k - 1], i[k], i[k + 1], o[k - 1], o[k], o[k + 1])
+            }
+        }
+    }
+
+    override fun evaluate(at: Double): Double {
+        val n = size
+
+        if (n < 2 || at < i[0]) {
+            return o[0]
+        }
+        if (at >= i[n - 1]) {
+            return o[n - 1]
+        }
+
+        // Find the interval [x_k, x_{k+1}] where at lies
+        val k = segmentIndex(at)
+
+        val h = i[k + 1] - i[k]
+        val t = (at - i[k]) / h
+        val t2 = t * t
+        val t3 = t2 * t
+
+        val h00 = 2 * t3 - 3 * t2 + 1
+        val h10 = t3 - 2 * t2 + t
+        val h01 = -2 * t3 + 3 * t2
+        val h11 = t3 - t2
+
+        return h00 * o[k] + h10 * h * slopes[k] + h01 * o[k + 1] + h11 * h * slopes[k + 1]
+    }
+}
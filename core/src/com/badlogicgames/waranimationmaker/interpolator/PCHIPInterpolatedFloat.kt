@@ -1,27 +1,37 @@
 package com.badlogicgames.waranimationmaker.interpolator
 
-import com.badlogicgames.waranimationmaker.utilities.toDoubleArray
-
-class PCHIPInterpolatedFloat(initValue: Float, initTime: Int) : InterpolatedValue<Int, Float>(initValue, initTime) {
-
-    @Transient
-    override var interpolationFunction = PCHIPInterpolationFunction(arrayOf(initTime.toDouble()), doubleArrayOf(initValue.toDouble())).map({
-        it.toInt()
-    }, {
-        it.toFloat()
-    }, {
-        it.toDouble()
-    })
+class PCHIPInterpolatedFloat(initValue: Float, initTime: Int) : InterpolatedFloat(initValue, initTime) {
 
     init {
         setPoints[initTime] = initValue
         updateInterpolationFunction()
     }
 
-    override fun updateInterpolationFunction() {
-        interpolationFunction = PCHIPInterpolationFunction(
-            setPoints.keys.toDoubleArray(),
-            setPoints.values.map { it.toDouble() }.toDoubleArray().toDoubleArray()
-        ).map({ it.toInt() }, { it.toFloat() }, { it.toDouble() })
+    override fun newInterpolationFunction(i: DoubleArray, o: DoubleArray) = PCHIPDoubleInterpolationFunction(i, o)
+
+    // Single set point edits, such as dragging an object in move mode, patch the knot in place rather than rebuilding every slope
+    override fun newSetPoint(time: Int, value: Float) {
+        setPoints[time] = value
+        val function = interpolationFunction
+        if (interpolationFunctionCurrent() && function is PCHIPDoubleInterpolationFunction) {
+            function.set(time.toDouble(), value.toDouble())
+            interpolationFunctionPatched()
+        } else {
+            invalidateInterpolationFunction()
+        }
+    }
+
+    override fun removeFrame(x: Int): Boolean {
+        if (setPoints.size > 1 && setPoints.remove(x) != null) {
+            val function = interpolationFunction
+            if (interpolationFunctionCurrent() && function is PCHIPDoubleInterpolationFunction) {
+                function.remove(x.toDouble())
+                interpolationFunctionPatched()
+            } else {
+                invalidateInterpolationFunction()
+            }
+            return true
+        }
+        return false
     }
-}
\ No newline at end of file
+}
@@ -18,31 +18,8 @@ class PCHIPInterpolationFunction<I : Number>(i: Array<I>, o: DoubleArray) : Inte
             return doubleArrayOf()
         }
 
-        val h = DoubleArray(n - 1)
-        val delta = DoubleArray(n - 1)
         val slopes = DoubleArray(n)
-
-        // Calculate h and delta
-        for (i in 0 until n - 1) {
-            h[i] = x[i + 1].toDouble() - x[i].toDouble()
-            delta[i] = (y[i + 1] - y[i]) / h[i]
-        }
-
-        // End points: 0 slope
-        slopes[0] = 0.0
-        slopes[n - 1] = 0.0
-
-        // Internal points
-        for (i in 1 until n - 1) {
-            if (delta[i - 1] * delta[i] > 0) {
-                val w1 = 2 * h[i] + h[i - 1]
-                val w2 = h[i] + 2 * h[i - 1]
-                slopes[i] = (w1 + w2) / (w1 / delta[i - 1] + w2 / delta[i])
-            } else {
-                slopes[i] = 0.0
-            }
-        }
-
+        computeSlopes(DoubleArray(n) { x[it].toDouble() }, y, slopes)
         return slopes
     }
 
@@ -88,4 +65,37 @@ class PCHIPInterpolationFunction<I : Number>(i: Array<I>, o: DoubleArray) : Inte
         // Interpolated value
         return h00 * o[k] + h10 * h * slopes[k] + h01 * o[k + 1] + h11 * h * slopes[k + 1]
     }
+
+    companion object {
+        // Writes the PCHIP slope at every knot into slopes without allocating, so callers can reuse their buffers
+        fun computeSlopes(x: DoubleArray, y: DoubleArray, slopes: DoubleArray, n: Int = x.size) {
+            if (n < 2) {
+                return
+            }
+
+            // End points: 0 slope
+            slopes[0] = 0.0
+            slopes[n - 1] = 0.0
+
+            // Internal points
+            for (i in 1 until n - 1) {
+                slopes[i] = knotSlope(x[i - 1], x[i], x[i + 1], y[i - 1], y[i], y[i + 1])
+            }
+        }
+
+        // Slope at a knot depends only on the two intervals touching it
+        fun knotSlope(x0: Double, x1: Double, x2: Double, y0: Double, y1: Double, y2: Double): Double {
+            val h0 = x1 - x0
+            val h1 = x2 - x1
+            val delta0 = (y1 - y0) / h0
+            val delta1 = (y2 - y1) / h1
+
+            if (delta0 * delta1 > 0) {
+                val w1 = 2 * h1 + h0
+                val w2 = h1 + 2 * h0
+                return (w1 + w2) / (w1 / delta0 + w2 / delta1)
+            }
+            return 0.0
+        }
+    }
 }
@@ -7,7 +7,6 @@ public class StepInterpolationFunction<I extends Number, O> extends Interpolatio
 
     @Override
     public O evaluate(I at) {
-        int i = 0;
         if (at.doubleValue() <= getI()[0].doubleValue()) {
             return getO()[0];
         }
@@ -16,13 +15,7 @@ public class StepInterpolationFunction<I extends Number, O> extends Interpolatio
             return getO()[getI().length - 1];
         }
 
-        for (I definedTime : getI()) {
-            if (definedTime.doubleValue() > at.doubleValue()) {
-                return getO()[i - 1];
-            }
-            i++;
-        }
-        throw new IllegalStateException("Step interpolation failed somehow");
+        return getO()[segmentIndex(at.doubleValue())];
     }
 
     @Override
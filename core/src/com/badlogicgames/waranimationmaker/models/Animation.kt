@@ -1,6 +1,9 @@
 package com.badlogicgames.waranimationmaker.models
 
 import com.badlogic.gdx.graphics.OrthographicCamera
+import com.badlogic.gdx.utils.IntIntMap
+import com.badlogic.gdx.utils.IntMap
+import java.util.*
 
 data class Animation @JvmOverloads constructor(
     var name: String = "My Animation",
@@ -19,15 +22,35 @@ data class Animation @JvmOverloads constructor(
 )
 {
     @Transient var nodeEdgeHandler = NodeEdgeHandler(this)
+    // Lookup by ID value, kept in sync with nodes and nodeCollections by the add and remove functions below, and rebuilt after loading
+    @Transient private var nodeIndex = IntMap<Node>()
+    @Transient private var nodeCollectionIndex = IntMap<NodeCollection>()
+    @Transient private var nodePositions = IntIntMap() // Node ID value to its position in nodes, so removal can swap the last node into its place
+    @Transient private var nodesByTime = TreeMap<Int, LinkedHashMap<Int, Node>>() // Nodes grouped by initTime and keyed by ID value, in the order they were added
+    @Transient private var parentIndex = IntMap<MutableList<NodeCollection>>() // Node ID value to the node collections whose set points contain it, kept in sync by indexParents
 
     fun init() {
         nodeEdgeHandler = NodeEdgeHandler(this)
+        nodes.sortBy { it.id.value } // Removal reorders nodes. IDs count up as nodes are added, so this restores the order they were added in, which traversals start from
+        nodeIndex = IntMap(nodes.size)
+        nodePositions = IntIntMap(nodes.size)
+        nodesByTime = TreeMap()
+        nodes.forEachIndexed { position, node ->
+            nodeIndex.put(node.id.value, node)
+            nodePositions.put(node.id.value, position)
+            nodesByTime.getOrPut(node.initTime) { LinkedHashMap() }[node.id.value] = node
+        }
+        nodeCollectionIndex = IntMap(nodeCollections.size)
+        nodeCollections.forEach { nodeCollectionIndex.put(it.id.value, it) }
+        parentIndex = IntMap(nodes.size)
+        nodeEdgeHandler.indexEdges()
         nodes.forEach { node ->
             node.init()
             node.edges.forEach { it.updateScreenCoords(this) }
         }
         nodeCollections.forEach { it.init(initTime) }
         nodeEdgeHandler.updateNodeCollections()
+        nodeCollections.forEach { it.restoreHeld(this) }
         units.forEach { it.init(initTime) }
         mapLabels.forEach { it.alpha.update(initTime) }
         arrows.forEach { it.alpha.update(initTime) }
@@ -68,10 +91,52 @@ data class Animation @JvmOverloads constructor(
     }
 
     fun getNodeCollection(id: NodeCollectionID): NodeCollection? {
-        return nodeCollections.find { it.id.value == id.value }
+        return nodeCollectionIndex.get(id.value)
+    }
+
+    fun getNodeByID(id: NodeID): Node? = nodeIndex.get(id.value)
+
+    fun nodesAt(time: Int): Collection<Node> = nodesByTime[time]?.values ?: emptyList()
+
+    fun addNode(node: Node) {
+        nodePositions.put(node.id.value, nodes.size)
+        nodes.add(node)
+        nodeIndex.put(node.id.value, node)
+        nodesByTime.getOrPut(node.initTime) { LinkedHashMap() }[node.id.value] = node
+    }
+
+    fun removeNode(node: Node): Boolean {
+        var position = nodePositions.get(node.id.value, -1)
+        if (position !in nodes.indices || nodes[position] !== node) {
+            position = nodes.indexOfFirst { it === node } // Only when the position is out of date, e.g. two nodes share an ID
+        }
+        if (position == -1) {
+            return false
+        }
+        val last = nodes.removeAt(nodes.size - 1)
+        if (last !== node) {
+            nodes[position] = last
+            nodePositions.put(last.id.value, position)
+        }
+        if (nodeIndex.get(node.id.value) === node) {
+            nodeIndex.remove(node.id.value)
+            nodePositions.remove(node.id.value, -1)
+            parentIndex.remove(node.id.value)
+        }
+        val bucket = nodesByTime[node.initTime]
+        if (bucket != null && bucket[node.id.value] === node) {
+            bucket.remove(node.id.value)
+            if (bucket.isEmpty()) {
+                nodesByTime.remove(node.initTime)
+            }
+        }
+        return true
     }
 
-    fun getNodeByID(id: NodeID): Node? = nodes.firstOrNull { it.id.value == id.value }
+    fun addNodeCollection(nodeCollection: NodeCollection) {
+        nodeCollections.add(nodeCollection)
+        nodeCollectionIndex.put(nodeCollection.id.value, nodeCollection)
+    }
 
     fun newNode(x: Float, y: Float, time: Int): Node {
         val node = Node(Coordinate(x, y), time, NodeID(nodeId))
@@ -128,11 +193,11 @@ data class Animation @JvmOverloads constructor(
         val objects = ArrayList<T>()
 
         if (type.isAssignableFrom(Node::class.java)) {
-            objects.addAll(nodes.filter { time == it.initTime && it.clicked(x, y) }.map {it as T})
+            objects.addAll(nodesAt(time).filter { it.clicked(x, y) }.map {it as T})
         }
 
         if (type.isAssignableFrom(Edge::class.java)) {
-            nodes.filter { time == it.initTime }.forEach { node ->
+            nodesAt(time).forEach { node ->
                 objects.addAll(node.edges.filter { it.clicked(x, y) }.map { it as T} )
             }
         }
@@ -161,8 +226,25 @@ data class Animation @JvmOverloads constructor(
     }
 
     fun getParents(node: Node) : List<NodeCollection> {
-        return nodeCollections.filter {
-                nodeCollection -> (nodeCollection.interpolator.setPoints[node.initTime]?.nodes?.find { it.id.value == node.id.value } != null)
+        return parentIndex.get(node.id.value) ?: emptyList()
+    }
+
+    fun indexParents(nodeCollection: NodeCollection, removed: NodeCollectionSetPoint?, added: NodeCollectionSetPoint?) { // Call whenever a set point of nodeCollection is added or replaced
+        removed?.nodes?.forEach { node ->
+            val parents = parentIndex.get(node.id.value)
+            if (parents != null && parents.remove(nodeCollection) && parents.isEmpty()) { // Deleted nodes leave no entry behind
+                parentIndex.remove(node.id.value)
+            }
+        }
+        added?.nodes?.forEach { node ->
+            var parents = parentIndex.get(node.id.value)
+            if (parents == null) {
+                parents = mutableListOf()
+                parentIndex.put(node.id.value, parents)
+            }
+            if (!parents.contains(nodeCollection)) {
+                parents.add(nodeCollection)
+            }
         }
     }
 
@@ -4,6 +4,7 @@ import com.badlogic.gdx.scenes.scene2d.ui.VerticalGroup
 import com.badlogicgames.waranimationmaker.AreaColor
 import com.badlogicgames.waranimationmaker.InputElement
 import com.badlogicgames.waranimationmaker.TextInput
+import com.badlogicgames.waranimationmaker.interpolator.InterpolatedFloat
 import com.badlogicgames.waranimationmaker.interpolator.LinearInterpolatedFloat
 import com.badlogicgames.waranimationmaker.interpolator.PCHIPInterpolatedFloat
 
@@ -17,6 +18,17 @@ class Arrow(x: Float, y: Float, time: Int): ScreenObject(), HasAlpha, HasColor {
     var thickness = 10f
     @Transient
     override var inputElements: MutableList<InputElement<*>> = mutableListOf()
+    // Box around every set point and the set point version it was built from. PCHIP never overshoots its set points, so the whole path stays inside
+    @Transient private var bounds: Bounds? = null
+    @Transient private var boundsVersion = 0
+    // World space position at every time from the first set point to the last, rebuilt only when the set points change
+    @Transient var pathX = FloatArray(0)
+        private set
+    @Transient var pathY = FloatArray(0)
+        private set
+    @Transient var pathCount = 0
+        private set
+    @Transient private var pathVersion = 0
 
     override fun shouldDraw(time: Int): Boolean {
         return true
@@ -31,6 +43,37 @@ class Arrow(x: Float, y: Float, time: Int): ScreenObject(), HasAlpha, HasColor {
         return super.goToTime(time, zoom, cx, cy)
     }
 
+    fun onScreen(zoom: Float, cx: Float, cy: Float): Boolean {
+        var bounds = bounds
+        if (bounds == null || boundsVersion != setPointVersion()) {
+            bounds = bounds ?: Bounds()
+            bounds.clear()
+            for (time in xInterpolator.setPoints.keys) {
+                bounds.include(xInterpolator.setPoints[time]!!, yInterpolator.setPoints[time] ?: continue)
+            }
+            this.bounds = bounds
+            boundsVersion = setPointVersion()
+        }
+        return bounds.onScreen(zoom, cx, cy, thickness * 3)
+    }
+
+    fun updatePath(): Boolean { // Returns true if the path had to be rebuilt
+        if (pathX != null && pathCount > 0 && pathVersion == setPointVersion()) {
+            return false
+        }
+        val startTime = xInterpolator.setPoints.firstKey()
+        val endTime = xInterpolator.setPoints.lastKey()
+        pathCount = InterpolatedFloat.rangeSize(startTime, endTime, 1)
+        if (pathX == null || pathX.size < pathCount) {
+            pathX = FloatArray(pathCount)
+            pathY = FloatArray(pathCount)
+        }
+        xInterpolator.evaluateRange(startTime, endTime, 1, pathX)
+        yInterpolator.evaluateRange(startTime, endTime, 1, pathY)
+        pathVersion = setPointVersion()
+        return true
+    }
+
     override fun buildInputs() {
         super<ScreenObject>.buildInputs()
         super<HasAlpha>.buildInputs()
@@ -6,23 +6,34 @@ import com.badlogic.gdx.graphics.g2d.BitmapFont
 import com.badlogic.gdx.graphics.g2d.SpriteBatch
 import com.badlogic.gdx.graphics.glutils.ShaderProgram
 import com.badlogic.gdx.math.Rectangle
+import com.badlogic.gdx.utils.FloatArray as GdxFloatArray
 import com.badlogicgames.waranimationmaker.AnimationScreen
+import com.badlogicgames.waranimationmaker.WarAnimationMaker.DISPLAY_HEIGHT
+import com.badlogicgames.waranimationmaker.WarAnimationMaker.DISPLAY_WIDTH
+import com.badlogicgames.waranimationmaker.interpolator.InterpolatedFloat
 import com.badlogicgames.waranimationmaker.models.Unit.Companion.sizePresets
-import com.badlogicgames.waranimationmaker.utilities.Earcut
-import space.earlygrey.shapedrawer.JoinType
+import com.badlogicgames.waranimationmaker.utilities.GdxEarcut
 import space.earlygrey.shapedrawer.ShapeDrawer
+import kotlin.math.max
 import kotlin.math.min
-import kotlin.math.sqrt
 
 class Drawer(val font: BitmapFont,
              val fontShader: ShaderProgram,
+             meshShader: ShaderProgram,
              val batcher: SpriteBatch,
              val shapeDrawer: ShapeDrawer,
              var camera: OrthographicCamera,
              var time: Int = 0
 ) {
     private var zoomFactor: Float = 1f
+    // Reused buffers for paths evaluated over a range of times
+    private var pathX = FloatArray(0)
+    private var pathY = FloatArray(0)
+    private var pathTimes = IntArray(0)
+    private var holeStarts = IntArray(0) // Vertex index each hole starts at, for GdxEarcut
     var animationMode = false
+    private var animation: Animation? = null // Animation being drawn, for looking up the holes of Areas
+    private val meshRenderer = MeshRenderer(meshShader)
 
     fun update(time: Int, animationMode: Boolean) {
         this.time = time
@@ -31,6 +42,8 @@ class Drawer(val font: BitmapFont,
     }
 
     fun draw(animation: Animation) {
+        this.animation = animation
+        meshRenderer.prune(animation)
         Gdx.gl.glClearColor(0f, 0f, 0f, 0f)
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT)
 
@@ -39,53 +52,104 @@ class Drawer(val font: BitmapFont,
         animation.images.forEach { draw(it) }
         animation.mapLabels.forEach { draw(it) }
 
+        beginMeshes()
         for (nodeCollection in animation.nodeCollections) {
             if (nodeCollection.type == "Area") {
                 draw(nodeCollection)
             }
         }
+        endMeshes()
 
         //batcher.setColor(1f, 1f, 1f, 1f)
         animation.units.forEach { draw(it) }
 
+        beginMeshes()
         for (edgeCollection in animation.nodeCollections) {
             if (edgeCollection.type == "Line") {
                 draw(edgeCollection)
             }
         }
+        endMeshes()
 
-        if (animationMode) animation.nodes.forEach { draw(it) }
+        if (animationMode) animation.nodesAt(time).forEach { draw(it) }
+        beginMeshes()
         animation.arrows.forEach { draw(it) }
+        endMeshes()
     }
 
     fun draw(nodeCollection: NodeCollection) {
-        val screenCoords = nodeCollection.interpolator.coordinates.map { projectToScreen(it, camera.zoom, camera.position.x, camera.position.y) }
-        if (nodeCollection.interpolator.setPoints.isNotEmpty()) {
-            shapeDrawer.setColor(colorWithAlpha(nodeCollection.color.color, nodeCollection.alpha.value))
+        if (nodeCollection.interpolator.setPoints.isNotEmpty() && nodeCollection.onScreen(camera.zoom, camera.position.x, camera.position.y)) {
+            val started = meshRenderer.drawing
+            if (!started) {
+                beginMeshes()
+            }
             if (nodeCollection.type == "Area") {
-                val poly = screenCoords.flatMap { listOf(it.x, it.y) }.toFloatArray()
-
-                val earcut = Earcut.earcut(poly) // Turns polygon into series of triangles which share vertices with the polygon. The triangles' vertices are represented as the index of an original polygon vertex
-
-                var j = 0
-                while (j < earcut.size) {
-                    shapeDrawer.filledTriangle(
-                        poly[earcut[j] * 2],
-                        poly[earcut[j] * 2 + 1],
-                        poly[earcut[j + 1] * 2],
-                        poly[earcut[j + 1] * 2 + 1],
-                        poly[earcut[j + 2] * 2],
-                        poly[earcut[j + 2] * 2 + 1]
-                    )
-                    j += 3
-                }
+                val changed = triangulate(nodeCollection)
+                meshRenderer.drawArea(nodeCollection, changed, nodeCollection.color.color, nodeCollection.alpha.value)
             }
             if (nodeCollection.type == "Line") {
-                if (screenCoords.isNotEmpty()) {
-                    val screenCoordsArray = screenCoords.flatMap { listOf(it.x, it.y) }.toFloatArray()
-                    shapeDrawer.path(screenCoordsArray, nodeCollection.width?: 5f, JoinType.NONE, true)
-                }
+                meshRenderer.drawLine(nodeCollection, nodeCollection.width ?: NodeCollection.DEFAULT_WIDTH, nodeCollection.color.color, nodeCollection.alpha.value)
+            }
+            if (!started) {
+                endMeshes()
+            }
+        }
+    }
+
+    // Meshes are drawn with their own shader, so the batch is flushed before and resumed after. Consecutive node collections share one pause
+    private fun beginMeshes() {
+        batcher.end()
+        meshRenderer.begin(batcher.projectionMatrix, camera.zoom, camera.position.x, camera.position.y)
+    }
+
+    private fun endMeshes() {
+        meshRenderer.end()
+        batcher.begin()
+    }
+
+    fun dispose() {
+        meshRenderer.dispose()
+    }
+
+    // Triangulates the outline, with its holes cut out, only when any of their coordinates have changed since the last time. Returns true if it did
+    // Vertices go into the collection's own buffers and GdxEarcut reuses its nodes, so nothing is allocated once the buffers are large enough
+    private fun triangulate(nodeCollection: NodeCollection): Boolean {
+        var version = nodeCollection.interpolator.coordinatesVersion
+        for (hole in nodeCollection.holes) {
+            version += animation?.getNodeCollection(NodeCollectionID(hole))?.interpolator?.coordinatesVersion ?: 0
+        }
+        if (nodeCollection.trianglesVersion == version) {
+            return false
+        }
+
+        val vertices = nodeCollection.triangleVertices
+        vertices.clear()
+        addVertices(vertices, nodeCollection.interpolator.coordinates)
+
+        var holeCount = 0
+        for (hole in nodeCollection.holes) {
+            val coordinates = animation?.getNodeCollection(NodeCollectionID(hole))?.interpolator?.coordinates ?: continue
+            if (coordinates.size < 3) {
+                continue
+            }
+            if (holeStarts.size <= holeCount) {
+                holeStarts = holeStarts.copyOf(max(holeCount + 1, holeStarts.size * 2))
             }
+            holeStarts[holeCount++] = vertices.size / 2
+            addVertices(vertices, coordinates)
+        }
+
+        // Turns polygon into series of triangles which share vertices with the polygon. The triangles' vertices are represented as the index of an original polygon vertex
+        nodeCollection.triangles.clear()
+        nodeCollection.triangles.addAll(GdxEarcut.earcut(vertices.items, vertices.size, holeStarts, holeCount, 2))
+        nodeCollection.trianglesVersion = version
+        return true
+    }
+
+    private fun addVertices(vertices: GdxFloatArray, coordinates: Array<Coordinate>) {
+        vertices.ensureCapacity(coordinates.size * 2)
+        for (coordinate in coordinates) {
+            vertices.add(coordinate.x, coordinate.y)
         }
     }
 
@@ -93,6 +157,9 @@ class Drawer(val font: BitmapFont,
         val drawSize = (unit.drawSize ?: sizePresets[unit.size]) ?: 1.0f
         unit.width = AnimationScreen.DEFAULT_UNIT_WIDTH * zoomFactor * drawSize
         unit.height = AnimationScreen.DEFAULT_UNIT_HEIGHT * zoomFactor * drawSize
+        if (!AnimationScreen.onScreen(unit.screenPosition.x, unit.screenPosition.y, max(unit.width, unit.height))) { // The name below can be wider than the unit
+            return
+        }
 
         Gdx.gl.glEnable(GL20.GL_BLEND)
         Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA)
@@ -164,44 +231,25 @@ class Drawer(val font: BitmapFont,
     }
 
     fun draw(node: Node) {
-        if (time == node.initTime) {
+        if (time == node.initTime && AnimationScreen.onScreen(node.screenPosition.x, node.screenPosition.y, 7.0f)) {
             shapeDrawer.setColor(node.color)
             shapeDrawer.filledCircle(node.screenPosition.x, node.screenPosition.y, 7.0f)
         }
     }
 
     fun draw(arrow: Arrow) {
-        var previous = projectToScreen(
-            Coordinate(
-                arrow.xInterpolator.interpolationFunction.evaluate(arrow.xInterpolator.setPoints.keys.first()),
-                arrow.yInterpolator.interpolationFunction.evaluate(arrow.xInterpolator.setPoints.keys.first())
-            ), camera.zoom, camera.position.x, camera.position.y
-        )
-
-        shapeDrawer.setColor(colorWithAlpha(arrow.color.color, arrow.alpha.value))
-
-        val endTime = min(time, arrow.xInterpolator.setPoints.keys.last())
-
-        for (time in arrow.xInterpolator.setPoints.keys.first().toInt()..endTime) { // Draws entire body of arrow
-            val position = projectToScreen(
-                Coordinate(
-                    arrow.xInterpolator.interpolationFunction.evaluate(time),
-                    arrow.yInterpolator.interpolationFunction.evaluate(time)
-                ), camera.zoom, camera.position.x, camera.position.y
-            )
-            shapeDrawer.line(previous.x, previous.y, position.x, position.y, arrow.thickness)
-            if (time == endTime) {
-                val triangle = generateTriangle(previous, position, arrow.thickness * 2, arrow.thickness * 3)
-                shapeDrawer.filledTriangle(
-                    triangle[0].x,
-                    triangle[0].y,
-                    triangle[1].x,
-                    triangle[1].y,
-                    triangle[2].x,
-                    triangle[2].y
-                )
-            }
-            previous = position
+        if (!arrow.onScreen(camera.zoom, camera.position.x, camera.position.y)) {
+            return
+        }
+        val started = meshRenderer.drawing
+        if (!started) {
+            beginMeshes()
+        }
+        val changed = arrow.updatePath() // The whole path is cached, drawing up to time only picks how much of it to show
+        val pointCount = InterpolatedFloat.rangeSize(arrow.xInterpolator.setPoints.firstKey(), min(time, arrow.xInterpolator.setPoints.lastKey()), 1)
+        meshRenderer.drawArrow(arrow, changed, pointCount, arrow.color.color, arrow.alpha.value)
+        if (!started) {
+            endMeshes()
         }
     }
 
@@ -209,7 +257,7 @@ class Drawer(val font: BitmapFont,
         if (animationMode) {
             drawAsSelected(image)
         }
-        if (image.texture != null && image.alpha.value != 0f) {
+        if (image.texture != null && image.alpha.value != 0f && onScreen(image)) {
             batcher.color = colorWithAlpha(Color.WHITE, image.alpha.value)
             batcher.draw(
                 image.texture,
@@ -222,6 +270,9 @@ class Drawer(val font: BitmapFont,
     }
 
     fun draw(mapLabel: MapLabel) {
+        if (mapLabel.textWidth != 0f && !AnimationScreen.onScreen(mapLabel.screenPosition.x, mapLabel.screenPosition.y, mapLabel.size * 10 + mapLabel.textWidth)) { // textWidth is from the last time it was drawn, so a label is always drawn once
+            return
+        }
         shapeDrawer.setColor(Color(mapLabel.color.color.r, mapLabel.color.color.g, mapLabel.color.color.b, mapLabel.alpha.value))
         shapeDrawer.filledCircle(mapLabel.screenPosition.x, mapLabel.screenPosition.y, mapLabel.size * 10)
 
@@ -230,11 +281,19 @@ class Drawer(val font: BitmapFont,
         prepareFont(Color.WHITE, mapLabel.color.color, mapLabel.alpha.value, mapLabel.size)
 
         val textSize = measureText(font, mapLabel.text)
+        mapLabel.textWidth = textSize.width
         font.draw(batcher, mapLabel.text, mapLabel.screenPosition.x - textSize.width / 2, mapLabel.screenPosition.y + textSize.height * (3f / 2) + mapLabel.size * 5)
 
         batcher.shader = null
     }
 
+    private fun onScreen(image: Image): Boolean { // Images are drawn up and to the right of their screen position
+        val width = image.texture!!.width.toFloat() * camera.zoom * image.scale
+        val height = image.texture!!.height.toFloat() * camera.zoom * image.scale
+        return image.screenPosition.x + width >= 0 && image.screenPosition.x <= DISPLAY_WIDTH &&
+            image.screenPosition.y + height >= 0 && image.screenPosition.y <= DISPLAY_HEIGHT
+    }
+
     fun drawTexture(texture: Texture, rect: Rectangle) {
         batcher.draw(texture, rect.x, rect.y, rect.width, rect.height)
     }
@@ -246,25 +305,30 @@ class Drawer(val font: BitmapFont,
             val yInterpolator = screenObject.yInterpolator
 
             shapeDrawer.setColor(Color.SKY)
-            for (time in xInterpolator.setPoints.keys.first().toInt()..xInterpolator.setPoints.keys.last()
-                .toInt() step 4) { // Draws entire path of the selected object over time
-                val position = projectToScreen(
-                    Coordinate(
-                        xInterpolator.interpolationFunction.evaluate(time),
-                        yInterpolator.interpolationFunction.evaluate(time)
-                    ), camera.zoom, camera.position.x, camera.position.y
-                )
-                shapeDrawer.filledCircle(position.x, position.y, 2f)
+            val startTime = xInterpolator.setPoints.firstKey()
+            val endTime = xInterpolator.setPoints.lastKey()
+            var count = reservePath(InterpolatedFloat.rangeSize(startTime, endTime, 4))
+            xInterpolator.evaluateRange(startTime, endTime, 4, pathX)
+            yInterpolator.evaluateRange(startTime, endTime, 4, pathY)
+            projectToScreen(pathX, pathY, count, camera.zoom, camera.position.x, camera.position.y)
+            for (index in 0 until count) { // Draws entire path of the selected object over time
+                shapeDrawer.filledCircle(pathX[index], pathY[index], 2f)
             }
+
             shapeDrawer.setColor(Color.PURPLE)
-            for (time in xInterpolator.setPoints.keys) { // Draws all set points of the selected object
-                val position = projectToScreen(
-                    Coordinate(
-                        xInterpolator.interpolationFunction.evaluate(time),
-                        yInterpolator.interpolationFunction.evaluate(time)
-                    ), camera.zoom, camera.position.x, camera.position.y
-                )
-                shapeDrawer.filledCircle(position.x, position.y, 4f)
+            count = reservePath(xInterpolator.setPoints.size)
+            if (pathTimes.size < count) {
+                pathTimes = IntArray(count)
+            }
+            var timeIndex = 0
+            for (setPointTime in xInterpolator.setPoints.keys) {
+                pathTimes[timeIndex++] = setPointTime
+            }
+            xInterpolator.evaluateMany(pathTimes, pathX, count)
+            yInterpolator.evaluateMany(pathTimes, pathY, count)
+            projectToScreen(pathX, pathY, count, camera.zoom, camera.position.x, camera.position.y)
+            for (index in 0 until count) { // Draws all set points of the selected object
+                shapeDrawer.filledCircle(pathX[index], pathY[index], 4f)
             }
 
             if (anyObject.javaClass == Unit::class.java) {
@@ -299,6 +363,15 @@ class Drawer(val font: BitmapFont,
         }
     }
 
+    private fun reservePath(count: Int): Int { // Makes sure the path buffers hold count points, growing them only when needed
+        if (pathX.size < count) {
+            val capacity = max(count, pathX.size * 2)
+            pathX = FloatArray(capacity)
+            pathY = FloatArray(capacity)
+        }
+        return count
+    }
+
     private fun prepareFont(color: Color, outlineColor: Color, alpha: Float, size: Float) {
         font.color = colorWithAlpha(color, alpha)
         font.data.setScale(size)
@@ -306,29 +379,6 @@ class Drawer(val font: BitmapFont,
         fontShader.setUniformf("outlineDistance", 0.05f)
         fontShader.setUniformf("outlineColor", colorWithAlpha(outlineColor, alpha))
     }
-
-    private fun generateTriangle(a: Coordinate, b: Coordinate, baseWidth: Float, height: Float): Array<Coordinate> {
-        // Direction from A to B
-        val dx: Float = b.x - a.x
-        val dy: Float = b.y - a.y
-        val length = sqrt(dx * dx + dy * dy)
-        val ux = dx / length
-        val uy = dy / length
-
-        // Perpendicular direction (rotated 90°)
-        val px = -uy
-        val py = ux
-
-        // Base endpoints, perpendicular to direction, centered at B
-        val halfBase = baseWidth / 2.0f
-        val p1 = Coordinate(b.x + px * halfBase, b.y + py * halfBase)
-        val p2 = Coordinate(b.x - px * halfBase, b.y - py * halfBase)
-
-        // Tip of triangle, extending in A→B direction from B
-        val tip = Coordinate(b.x + ux * height, b.y + uy * height)
-
-        return arrayOf(p1, p2, tip)
-    }
 }
 
 fun colorWithAlpha(color: Color, alpha: Float): Color {
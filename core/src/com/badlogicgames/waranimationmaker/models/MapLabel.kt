@@ -16,6 +16,7 @@ class MapLabel(x: Float, y: Float, time: Int) : ScreenObject(), HasAlpha, HasCol
     var text = ""
     override var color = AreaColor.RED
     var size = 1f
+    @Transient var textWidth = 0f // Width of the text when last drawn, for culling
     @Transient
     override var inputElements: MutableList<InputElement<*>> = mutableListOf()
 
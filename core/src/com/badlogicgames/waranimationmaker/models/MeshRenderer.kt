@@ -0,0 +1,271 @@
+package com.badlogicgames.waranimationmaker.models
+
+import com.badlogic.gdx.Gdx
+import com.badlogic.gdx.graphics.Color
+import com.badlogic.gdx.graphics.GL20
+import com.badlogic.gdx.graphics.Mesh
+import com.badlogic.gdx.graphics.VertexAttribute
+import com.badlogic.gdx.graphics.VertexAttributes.Usage
+import com.badlogic.gdx.graphics.glutils.ShaderProgram
+import com.badlogic.gdx.math.Matrix4
+import com.badlogic.gdx.utils.IntMap
+import com.badlogicgames.waranimationmaker.WarAnimationMaker.DISPLAY_HEIGHT
+import com.badlogicgames.waranimationmaker.WarAnimationMaker.DISPLAY_WIDTH
+import java.util.*
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sqrt
+
+// Draws node collections and arrow bodies from world space vertices kept on the GPU, one mesh per object
+// The camera is applied by the shader's matrix, so a mesh is only uploaded again when its object's geometry changes
+class MeshRenderer(val shader: ShaderProgram) {
+    private class CollectionMesh(val owner: Any, var mesh: Mesh, var area: Boolean, var version: Int, var vertexCount: Int) {
+        var liveStamp = 0 // Last prune that found the owner still in the animation
+    }
+
+    private val meshes = IntMap<CollectionMesh>() // Keyed by node collection ID value
+    private val arrowMeshes = IdentityHashMap<Arrow, CollectionMesh>()
+    private var liveStamp = 0
+    private var vertices = FloatArray(0) // Reused to build vertex data before it is uploaded
+    private val transform = Matrix4()
+    private var zoom = 1f
+    var drawing = false
+        private set
+
+    fun begin(projection: Matrix4, zoom: Float, cx: Float, cy: Float) { // Same projection as projectToScreen, world * zoom + offset
+        this.zoom = zoom
+        transform.set(projection)
+            .translate(DISPLAY_WIDTH / 2 - cx * zoom, DISPLAY_HEIGHT / 2 - cy * zoom, 0f)
+            .scale(zoom, zoom, 1f)
+
+        Gdx.gl.glEnable(GL20.GL_BLEND)
+        Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA)
+        shader.bind()
+        shader.setUniformMatrix("u_projTrans", transform)
+        drawing = true
+    }
+
+    fun end() {
+        drawing = false
+    }
+
+    // Draws the triangles Drawer built for an Area. changed is true when they were rebuilt since the last call
+    fun drawArea(nodeCollection: NodeCollection, changed: Boolean, color: Color, alpha: Float) {
+        var entry = meshes.get(nodeCollection.id.value)
+        if (entry == null || entry.owner !== nodeCollection || !entry.area || changed) {
+            val triangles = nodeCollection.triangles
+            val source = nodeCollection.triangleVertices.items
+            val count = reserve(triangles.size)
+            var offset = 0
+            for (index in 0 until count) {
+                val vertex = triangles.items[index] * 2
+                vertices[offset++] = source[vertex]
+                vertices[offset++] = source[vertex + 1]
+                vertices[offset++] = 0f
+                vertices[offset++] = 0f
+            }
+            entry = upload(nodeCollection, entry, count, true, 0)
+            meshes.put(nodeCollection.id.value, entry)
+        }
+        render(entry, color, alpha, 0f, 0, entry.vertexCount)
+    }
+
+    // Draws a Line as one quad per segment, each pushed out to width pixels by the shader. Rebuilt only when the coordinates change
+    fun drawLine(nodeCollection: NodeCollection, width: Float, color: Color, alpha: Float) {
+        var entry = meshes.get(nodeCollection.id.value)
+        val version = nodeCollection.interpolator.coordinatesVersion
+        if (entry == null || entry.owner !== nodeCollection || entry.area || entry.version != version) {
+            val coordinates = nodeCollection.interpolator.coordinates
+            reserve(max(coordinates.size - 1, 0) * 6)
+            var offset = 0
+            for (index in 0 until coordinates.size - 1) {
+                val a = coordinates[index]
+                val b = coordinates[index + 1]
+                if (a.x != b.x || a.y != b.y) {
+                    offset = putSegment(offset, a.x, a.y, b.x, b.y)
+                }
+            }
+            entry = upload(nodeCollection, entry, offset / FLOATS_PER_VERTEX, false, version)
+            meshes.put(nodeCollection.id.value, entry)
+        }
+        render(entry, color, alpha, width / 2 / zoom, 0, entry.vertexCount)
+    }
+
+    // Draws an arrow's body up to pointCount points of its path, and its head at the last of them. changed is true when the path was rebuilt since the last call
+    // The mesh holds the head followed by a quad for every segment drawn so far. As the arrow grows only the new segments and the head are uploaded, scrubbing back just draws fewer
+    fun drawArrow(arrow: Arrow, changed: Boolean, pointCount: Int, color: Color, alpha: Float) {
+        val points = min(pointCount, arrow.pathCount)
+        if (points < 1) {
+            return
+        }
+        var entry = arrowMeshes[arrow]
+        val needed = HEAD_VERTICES + (points - 1) * 6
+        val builtSegments = if (entry == null || changed) 0 else (entry.vertexCount - HEAD_VERTICES) / 6
+
+        if (entry == null || changed || entry.mesh.maxVertices < needed) { // Upload everything drawn so far, growing the mesh by doubling if needed
+            val existing = entry?.mesh?.maxVertices ?: 0
+            val capacity = if (existing >= needed) existing else max(needed, existing * 2)
+            reserve(capacity)
+            var offset = putHead(0, arrow, points - 1)
+            for (index in 0 until points - 1) {
+                offset = putSegment(offset, arrow.pathX[index], arrow.pathY[index], arrow.pathX[index + 1], arrow.pathY[index + 1])
+            }
+            if (entry == null || existing < capacity) {
+                entry?.mesh?.dispose()
+                entry = CollectionMesh(arrow, newMesh(capacity), false, points, needed)
+                arrowMeshes[arrow] = entry
+            }
+            entry.mesh.setVertices(vertices, 0, capacity * FLOATS_PER_VERTEX) // The whole capacity, so the buffer's limit lets later updateVertices calls append
+            entry.version = points
+            entry.vertexCount = needed
+        } else {
+            if (points - 1 > builtSegments) { // Append the segments the arrow grew by
+                reserve((points - 1 - builtSegments) * 6)
+                var offset = 0
+                for (index in builtSegments until points - 1) {
+                    offset = putSegment(offset, arrow.pathX[index], arrow.pathY[index], arrow.pathX[index + 1], arrow.pathY[index + 1])
+                }
+                entry.mesh.updateVertices((HEAD_VERTICES + builtSegments * 6) * FLOATS_PER_VERTEX, vertices, 0, offset)
+                entry.vertexCount = needed
+            }
+            if (entry.version != points) { // version is the point the head was last put at
+                reserve(HEAD_VERTICES)
+                entry.mesh.updateVertices(0, vertices, 0, putHead(0, arrow, points - 1))
+                entry.version = points
+            }
+        }
+
+        val halfWidth = arrow.thickness / 2 / zoom
+        render(entry, color, alpha, halfWidth, HEAD_VERTICES, (points - 1) * 6)
+        render(entry, color, alpha, halfWidth, 0, HEAD_VERTICES)
+    }
+
+    // Head at point index of the arrow's path, along the last segment before it with a length. The shader pushes it out to 2 thicknesses wide and 3 long
+    private fun putHead(offset: Int, arrow: Arrow, index: Int): Int {
+        var directionX = 0f
+        var directionY = 0f
+        var previous = index - 1
+        while (previous >= 0) {
+            val dx = arrow.pathX[index] - arrow.pathX[previous]
+            val dy = arrow.pathY[index] - arrow.pathY[previous]
+            val length = sqrt(dx * dx + dy * dy)
+            if (length > 0f) {
+                directionX = dx / length
+                directionY = dy / length
+                break
+            }
+            previous--
+        }
+        val x = arrow.pathX[index]
+        val y = arrow.pathY[index]
+        var next = putVertex(offset, x, y, -directionY * 2, directionX * 2)
+        next = putVertex(next, x, y, directionY * 2, -directionX * 2)
+        return putVertex(next, x, y, directionX * 6, directionY * 6)
+    }
+
+    // Frees the meshes of node collections and arrows that are no longer in the animation. Every live object marks its mesh, then unmarked meshes are freed
+    // Runs every frame so a deleted object's mesh is freed even when another object took its place
+    fun prune(animation: Animation) {
+        liveStamp++
+        for (nodeCollection in animation.nodeCollections) {
+            val entry = meshes.get(nodeCollection.id.value)
+            if (entry != null && entry.owner === nodeCollection) {
+                entry.liveStamp = liveStamp
+            }
+        }
+        for (arrow in animation.arrows) {
+            arrowMeshes[arrow]?.liveStamp = liveStamp
+        }
+
+        val iterator = meshes.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next().value
+            if (entry.liveStamp != liveStamp) {
+                entry.mesh.dispose()
+                iterator.remove()
+            }
+        }
+        arrowMeshes.values.removeIf { entry ->
+            val removed = entry.liveStamp != liveStamp
+            if (removed) {
+                entry.mesh.dispose()
+            }
+            removed
+        }
+    }
+
+    fun dispose() {
+        for (entry in meshes) {
+            entry.value.mesh.dispose()
+        }
+        meshes.clear()
+        arrowMeshes.values.forEach { it.mesh.dispose() }
+        arrowMeshes.clear()
+    }
+
+    private fun reserve(vertexCount: Int): Int { // Makes sure the vertex buffer holds vertexCount vertices
+        val size = vertexCount * FLOATS_PER_VERTEX
+        if (vertices.size < size) {
+            vertices = FloatArray(max(size, vertices.size * 2))
+        }
+        return vertexCount
+    }
+
+    private fun putSegment(offset: Int, ax: Float, ay: Float, bx: Float, by: Float): Int { // A quad of two triangles along the segment, zero width if it has no length
+        val dx = bx - ax
+        val dy = by - ay
+        val length = sqrt(dx * dx + dy * dy)
+        val nx = if (length > 0f) -dy / length else 0f
+        val ny = if (length > 0f) dx / length else 0f
+        var next = putVertex(offset, ax, ay, nx, ny)
+        next = putVertex(next, ax, ay, -nx, -ny)
+        next = putVertex(next, bx, by, nx, ny)
+        next = putVertex(next, bx, by, nx, ny)
+        next = putVertex(next, ax, ay, -nx, -ny)
+        return putVertex(next, bx, by, -nx, -ny)
+    }
+
+    private fun putVertex(offset: Int, x: Float, y: Float, nx: Float, ny: Float): Int {
+        vertices[offset] = x
+        vertices[offset + 1] = y
+        vertices[offset + 2] = nx
+        vertices[offset + 3] = ny
+        return offset + FLOATS_PER_VERTEX
+    }
+
+    private fun upload(owner: Any, existing: CollectionMesh?, vertexCount: Int, area: Boolean, version: Int): CollectionMesh { // The caller stores the returned mesh
+        var entry = existing
+        if (entry == null || entry.owner !== owner || entry.mesh.maxVertices < vertexCount) { // Grow by doubling so outlines that keep changing size are not reallocated every frame
+            val capacity = if (entry?.owner === owner) max(vertexCount, entry.mesh.maxVertices * 2) else vertexCount
+            entry?.mesh?.dispose()
+            entry = CollectionMesh(owner, newMesh(capacity), area, version, vertexCount)
+        }
+        entry.mesh.setVertices(vertices, 0, vertexCount * FLOATS_PER_VERTEX)
+        entry.area = area
+        entry.version = version
+        entry.vertexCount = vertexCount
+        return entry
+    }
+
+    private fun newMesh(maxVertices: Int): Mesh {
+        return Mesh(
+            false, max(maxVertices, 1), 0,
+            VertexAttribute(Usage.Position, 2, "a_position"),
+            VertexAttribute(Usage.Generic, 2, "a_normal")
+        )
+    }
+
+    private fun render(entry: CollectionMesh, color: Color, alpha: Float, halfWidth: Float, offset: Int, vertexCount: Int) {
+        if (vertexCount == 0) {
+            return
+        }
+        shader.setUniformf("u_color", color.r, color.g, color.b, alpha)
+        shader.setUniformf("u_halfWidth", halfWidth)
+        entry.mesh.render(shader, GL20.GL_TRIANGLES, offset, vertexCount)
+    }
+
+    companion object {
+        const val FLOATS_PER_VERTEX = 4 // Position and normal
+        const val HEAD_VERTICES = 3
+    }
+}
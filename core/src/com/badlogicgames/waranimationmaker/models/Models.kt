@@ -12,6 +12,37 @@ data class Coordinate(
     var y: Float
 )
 
+// Axis aligned box in world space, empty until a point is included
+class Bounds {
+    var minX = Float.POSITIVE_INFINITY
+    var minY = Float.POSITIVE_INFINITY
+    var maxX = Float.NEGATIVE_INFINITY
+    var maxY = Float.NEGATIVE_INFINITY
+
+    fun clear() {
+        minX = Float.POSITIVE_INFINITY
+        minY = Float.POSITIVE_INFINITY
+        maxX = Float.NEGATIVE_INFINITY
+        maxY = Float.NEGATIVE_INFINITY
+    }
+
+    fun include(x: Float, y: Float) {
+        if (x < minX) minX = x
+        if (y < minY) minY = y
+        if (x > maxX) maxX = x
+        if (y > maxY) maxY = y
+    }
+
+    fun onScreen(zoom: Float, cx: Float, cy: Float, margin: Float): Boolean { // margin is in pixels, for whatever is drawn around the box like line widths
+        if (minX > maxX) {
+            return false
+        }
+        // Same projection as projectToScreen
+        return (maxX - cx) * zoom + DISPLAY_WIDTH / 2 >= -margin && (minX - cx) * zoom + DISPLAY_WIDTH / 2 <= DISPLAY_WIDTH + margin &&
+            (maxY - cy) * zoom + DISPLAY_HEIGHT / 2 >= -margin && (minY - cy) * zoom + DISPLAY_HEIGHT / 2 <= DISPLAY_HEIGHT + margin
+    }
+}
+
 interface HasInputs {
     var inputElements: MutableList<InputElement<*>>
 
@@ -93,6 +124,13 @@ fun projectToScreen(position: Coordinate, zoom: Float, cx: Float, cy: Float): Co
     )
 }
 
+fun projectToScreen(xs: FloatArray, ys: FloatArray, count: Int, zoom: Float, cx: Float, cy: Float) { // Projects the first count points in place
+    for (index in 0 until count) {
+        xs[index] = xs[index] * zoom - cx * (zoom - 1) + (DISPLAY_WIDTH / 2 - cx)
+        ys[index] = ys[index] * zoom - cy * (zoom - 1) + (DISPLAY_HEIGHT / 2 - cy)
+    }
+}
+
 interface ID : Comparable<ID>, AbstractTypeSerializable {
     val value: Int
 
@@ -15,7 +15,6 @@ data class Node(
     override var screenPosition = Coordinate(0f, 0f)
     var color: Color = Color.GREEN
     @Transient override var inputElements: MutableList<InputElement<*>> = mutableListOf()
-    @Transient var visitedBy = mutableListOf<NodeCollectionID>()
     var tSetPoint: Double? = null
     var edges = mutableListOf<Edge>()
 
@@ -43,17 +42,12 @@ data class Node(
     fun init() { // Initialize transient properties
         edges.forEach { it.prepare() }
 
-        if (visitedBy == null) {
-            visitedBy = mutableListOf()
-        }
-
         if (screenPosition == null) {
             screenPosition = Coordinate(0f, 0f)
         }
     }
 
     fun update(camera: OrthographicCamera, time: Int) { // Goes to time, and if animation mode is active, draws colored circle
-        visitedBy.clear() // Clear to prepare to be traversed
         updateScreenPosition(camera.zoom, camera.position.x, camera.position.y)
         if (time == initTime) {
             edges.forEach {
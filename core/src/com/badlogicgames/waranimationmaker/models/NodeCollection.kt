@@ -2,9 +2,12 @@ package com.badlogicgames.waranimationmaker.models
 
 import com.badlogic.gdx.scenes.scene2d.ui.VerticalGroup
 import com.badlogic.gdx.utils.Array
+import com.badlogic.gdx.utils.FloatArray
+import com.badlogic.gdx.utils.IntArray
 import com.badlogicgames.waranimationmaker.AreaColor
 import com.badlogicgames.waranimationmaker.InputElement
 import com.badlogicgames.waranimationmaker.SelectBoxInput
+import com.badlogicgames.waranimationmaker.TextInput
 import com.badlogicgames.waranimationmaker.interpolator.LinearInterpolatedFloat
 import com.badlogicgames.waranimationmaker.interpolator.NodeCollectionInterpolator
 
@@ -14,6 +17,17 @@ open class NodeCollection(override val id: NodeCollectionID) : AnyObject, HasInp
     override var color: AreaColor = AreaColor.RED
     var type: String = "None"
     var width: Float? = null
+    var heldFrom = mutableMapOf<Int, Int>() // Held time to the time of the set point it holds. Held set points share that set point's nodes until either is edited
+    var heldNodes: MutableMap<Int, MutableList<Node>>? = null // Only in files saved when holds were snapshots of positions, turned into heldFrom by restoreHeld
+    var adaptiveTolerance: Float? = null // When set, the outline is sampled where it bends so it strays at most this many pixels from the curve, instead of evenly
+    var holes = mutableListOf<Int>() // IDs of node collections cut out of this Area, like enclaves
+    // World space outline and hole vertices of Area collections, the triangle indices into them, and the sum of the coordinates versions they were built from. Built in world space so camera moves do not invalidate them
+    @Transient var triangleVertices = FloatArray()
+    @Transient var triangles = IntArray()
+    @Transient var trianglesVersion = 0
+    // Box around the nodes of every set point and the set point version it was built from. Outlines are interpolated without overshooting their nodes, so they stay inside at every time
+    @Transient private var bounds: Bounds? = null
+    @Transient private var boundsVersion = 0
     @Transient override var inputElements: MutableList<InputElement<*>> = mutableListOf()
 
     override fun buildInputs() {
@@ -31,6 +45,25 @@ open class NodeCollection(override val id: NodeCollectionID) : AnyObject, HasInp
                 return@label type
             }, String::class.java, "Set node collection type", Array<String>().apply { add("Area", "Line") })
         )
+        inputElements.add(
+            TextInput(null, { input ->
+                adaptiveTolerance = if (input != null && input > 0f) {
+                    input
+                } else {
+                    null
+                }
+            }, label@{
+                return@label adaptiveTolerance.toString()
+            }, Float::class.java, "Set adaptive sampling tolerance")
+        )
+        inputElements.add(
+            TextInput(null, { input ->
+                holes = input?.split(',')?.mapNotNull { it.trim().toIntOrNull() }?.filter { it != id.value }?.toMutableList() ?: mutableListOf()
+                trianglesVersion = -1 // Triangulate again with the new holes
+            }, label@{
+                return@label holes.joinToString(", ")
+            }, String::class.java, "Set holes (node collection IDs)")
+        )
     }
 
     fun init(initTime: Int) {
@@ -38,6 +71,16 @@ open class NodeCollection(override val id: NodeCollectionID) : AnyObject, HasInp
         if (interpolator == null) {
             interpolator = NodeCollectionInterpolator()
         }
+        if (heldFrom == null) { // Not in files saved before holds referenced their set point
+            heldFrom = mutableMapOf()
+        }
+        if (holes == null) { // Not in files saved before Areas could have holes
+            holes = mutableListOf()
+        }
+        if (triangleVertices == null) {
+            triangleVertices = FloatArray()
+            triangles = IntArray()
+        }
     }
 
     override fun showInputs(verticalGroup: VerticalGroup, uiVisitor: UIVisitor) {
@@ -49,12 +92,101 @@ open class NodeCollection(override val id: NodeCollectionID) : AnyObject, HasInp
         super<HasAlpha>.hideInputs(verticalGroup, uiVisitor)
     }
 
-    fun update(time: Int, paused: Boolean) {
+    fun update(time: Int, paused: Boolean, zoom: Float = 1f) {
         if (!paused) {
             alpha.update(time)
             //interpolator.updateInterpolationFunction()
         }
-        interpolator.evaluate(time)
+        interpolator.evaluate(time, adaptiveTolerance, zoom) // Also when off screen, since visible outlines may use it as a hole. Only drawing is culled
+    }
+
+    fun onScreen(zoom: Float, cx: Float, cy: Float): Boolean {
+        var bounds = bounds
+        if (bounds == null || boundsVersion != interpolator.setPointVersion) {
+            bounds = bounds ?: Bounds()
+            bounds.clear()
+            for (setPoint in interpolator.setPoints.values) {
+                setPoint.nodes.forEach { bounds.include(it.position.x, it.position.y) }
+            }
+            this.bounds = bounds
+            boundsVersion = interpolator.setPointVersion
+        }
+        return bounds.onScreen(zoom, cx, cy, (width ?: DEFAULT_WIDTH) / 2 + 1)
+    }
+
+    // Holds the outline until time. The held set point only references the set point it holds and shares its node list, so holding copies nothing
+    // detachHolds gives it nodes of its own before that set point changes, and makeHeldEditable when it is edited itself
+    fun holdValueUntil(time: Int) {
+        if (interpolator.setPoints.isEmpty() || interpolator.setPoints.containsKey(time)) {
+            return
+        }
+        val sourceTime = interpolator.setPoints.headMap(time).keys.lastOrNull() ?: interpolator.setPoints.firstKey()
+        heldFrom[time] = heldFrom[sourceTime] ?: sourceTime // Holding a hold holds what it holds
+        showHeld(time)
+    }
+
+    fun makeHeldEditable(time: Int, animation: Animation) { // Copies the nodes a held set point shares into real nodes so they can be edited at its time
+        val held = interpolator.setPoints[time]
+        if (heldFrom.remove(time) == null || held == null) {
+            return
+        }
+        val copy = held.duplicate(time, animation)
+        interpolator.newSetPoint(time, copy)
+        animation.indexParents(this, null, copy) // Shared nodes were only indexed at their own time
+    }
+
+    fun detachHolds(time: Int, animation: Animation) { // Call before the set point at time is edited, so the set points holding it keep the outline from before
+        if (heldFrom.isEmpty()) {
+            return
+        }
+        val nodes = interpolator.setPoints[time]?.nodes ?: return
+        for ((held, source) in heldFrom.entries.toList()) {
+            if (source == time && interpolator.setPoints[held]?.nodes === nodes) { // Not yet shown while loading, then nothing has been edited
+                makeHeldEditable(held, animation)
+            }
+        }
+    }
+
+    fun setRebuiltSetPoint(setPoint: NodeCollectionSetPoint, animation: Animation) { // Replaces the set point at its time with one rebuilt from its nodes
+        detachHolds(setPoint.time, animation)
+        val replaced = if (heldFrom.remove(setPoint.time) == null) interpolator.setPoints[setPoint.time] else null // Nodes now exist at a held time, the shared nodes were not indexed there
+        interpolator.newSetPoint(setPoint.time, setPoint)
+        animation.indexParents(this, replaced, setPoint)
+    }
+
+    fun restoreHeld(animation: Animation) { // Recreates every held set point from the set point it holds, needed after loading
+        migrateHeldNodes(animation)
+        for ((time, source) in heldFrom.entries.toList()) {
+            if (interpolator.setPoints.containsKey(time) || !interpolator.setPoints.containsKey(source)) { // Real nodes were added at the held time, or the held set point is gone
+                heldFrom.remove(time)
+            } else {
+                showHeld(time)
+            }
+        }
+    }
+
+    // Files saved when holds were snapshots. A snapshot still matching the set point before it becomes a reference to it, one that does not is made editable so it keeps its positions
+    private fun migrateHeldNodes(animation: Animation) {
+        val heldNodes = heldNodes ?: return
+        this.heldNodes = null
+        for ((time, snapshot) in heldNodes.toSortedMap()) {
+            if (interpolator.setPoints.containsKey(time) || snapshot.isEmpty()) {
+                continue
+            }
+            val sourceTime = interpolator.setPoints.headMap(time).keys.lastOrNull() ?: interpolator.setPoints.firstKey()
+            val source = interpolator.setPoints[sourceTime]!!.nodes
+            if (source.size == snapshot.size && source.indices.all { source[it].position.x == snapshot[it].position.x && source[it].position.y == snapshot[it].position.y }) {
+                heldFrom[time] = sourceTime // Shown by restoreHeld
+            } else {
+                val copy = NodeCollectionSetPoint(time, NodeCollectionID(id.value), snapshot).duplicate(time, animation)
+                interpolator.newSetPoint(time, copy)
+                animation.indexParents(this, null, copy)
+            }
+        }
+    }
+
+    private fun showHeld(time: Int) {
+        interpolator.newSetPoint(time, NodeCollectionSetPoint(time, NodeCollectionID(id.value), interpolator.setPoints[heldFrom[time]!!]!!.nodes))
     }
 
     fun draw(drawer: Drawer, time: Int) {
@@ -68,4 +200,8 @@ open class NodeCollection(override val id: NodeCollectionID) : AnyObject, HasInp
     override fun clicked(x: Float, y: Float): Boolean {
         return false
     }
-}
\ No newline at end of file
+
+    companion object {
+        const val DEFAULT_WIDTH = 5f // Line width in pixels when width is not set
+    }
+}
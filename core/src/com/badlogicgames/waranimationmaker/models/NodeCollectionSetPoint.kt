@@ -3,13 +3,66 @@ package com.badlogicgames.waranimationmaker.models
 import com.badlogicgames.waranimationmaker.interpolator.InterpolationFunction
 import com.badlogicgames.waranimationmaker.interpolator.LinearInterpolationFunction
 import com.badlogicgames.waranimationmaker.interpolator.PCHIPInterpolationFunction
+import org.joml.Vector2f
 import kotlin.math.hypot
+import kotlin.math.max
+
+// Marks in keep the points of the polyline (xs, ys) that Douglas-Peucker needs to stay within tolerance, always including both ends. Marks already set are left alone, so several polylines can share one keep
+fun douglasPeucker(xs: DoubleArray, ys: DoubleArray, count: Int, tolerance: Double, keep: BooleanArray) {
+    if (count == 0) {
+        return
+    }
+    keep[0] = true
+    keep[count - 1] = true
+
+    val stack = ArrayDeque<Long>() // (first shl 32) or last of the stretches left to check, a stack instead of recursion so long outlines can not overflow
+    stack.addLast((0L shl 32) or (count - 1).toLong())
+    while (stack.isNotEmpty()) {
+        val stretch = stack.removeLast()
+        val first = (stretch shr 32).toInt()
+        val last = stretch.toInt()
+        if (last - first < 2) {
+            continue
+        }
+
+        val dx = xs[last] - xs[first]
+        val dy = ys[last] - ys[first]
+        val lengthSquared = dx * dx + dy * dy
+        var furthest = -1
+        var furthestDistance = tolerance
+        for (index in first + 1 until last) {
+            val px = xs[index] - xs[first]
+            val py = ys[index] - ys[first]
+            val distance = if (lengthSquared == 0.0) {
+                hypot(px, py)
+            } else {
+                val t = ((px * dx + py * dy) / lengthSquared).coerceIn(0.0, 1.0)
+                hypot(px - t * dx, py - t * dy)
+            }
+            if (distance > furthestDistance) {
+                furthest = index
+                furthestDistance = distance
+            }
+        }
+
+        if (furthest != -1) {
+            keep[furthest] = true
+            stack.addLast((first.toLong() shl 32) or furthest.toLong())
+            stack.addLast((furthest.toLong() shl 32) or last.toLong())
+        }
+    }
+}
 
 class NodeCollectionSetPoint(val time: Int, val id: NodeCollectionID, var nodes: MutableList<Node> = mutableListOf()) {
     var tInterpolator: InterpolationFunction<Int, Double> = LinearInterpolationFunction(arrayOf(0), arrayOf(0.0))
     var xInterpolator: InterpolationFunction<Double, Double> = PCHIPInterpolationFunction(arrayOf(0.0), doubleArrayOf(0.0))
     var yInterpolator: InterpolationFunction<Double, Double> = PCHIPInterpolationFunction(arrayOf(0.0), doubleArrayOf(0.0))
     var length: Double = 0.0
+    // Arc length lookup table: parameter values along the curve and the distance travelled along the curve to reach each of them
+    var arcParameters = DoubleArray(0)
+    var arcDistances = DoubleArray(0)
+    var arcLength: Double = 0.0
+    var nodeParameters = DoubleArray(0) // Parameter value at each node
 
     init {
         updateInterpolators()
@@ -54,6 +107,107 @@ class NodeCollectionSetPoint(val time: Int, val id: NodeCollectionID, var nodes:
 
         xInterpolator.init()
         yInterpolator.init()
+
+        nodeParameters = tVals.toDoubleArray()
+        updateArcLengthTable(tVals)
+    }
+
+    private fun updateArcLengthTable(tVals: List<Double>) { // Walks the curve in small parameter steps between every pair of nodes and accumulates the distance
+        val count = (tVals.size - 1).coerceAtLeast(0) * ARC_LENGTH_SUBDIVISIONS + 1
+        arcParameters = DoubleArray(count)
+        arcDistances = DoubleArray(count)
+
+        if (tVals.isEmpty()) {
+            arcLength = 0.0
+            return
+        }
+
+        arcParameters[0] = tVals[0]
+        var previousX = xInterpolator.evaluate(tVals[0])
+        var previousY = yInterpolator.evaluate(tVals[0])
+        var distance = 0.0
+
+        for (index in 0..<tVals.size - 1) {
+            for (step in 1..ARC_LENGTH_SUBDIVISIONS) {
+                val parameter = tVals[index] + (tVals[index + 1] - tVals[index]) * step / ARC_LENGTH_SUBDIVISIONS
+                val x = xInterpolator.evaluate(parameter)
+                val y = yInterpolator.evaluate(parameter)
+                distance += hypot(x - previousX, y - previousY)
+                previousX = x
+                previousY = y
+
+                val tableIndex = index * ARC_LENGTH_SUBDIVISIONS + step
+                arcParameters[tableIndex] = parameter
+                arcDistances[tableIndex] = distance
+            }
+        }
+        arcLength = distance
+    }
+
+    fun parameterAtDistance(distance: Double): Double { // Parameter value of the point the given distance along the curve
+        if (arcParameters.isEmpty()) {
+            return 0.0
+        }
+        if (distance <= 0.0 || arcLength == 0.0) {
+            return arcParameters[0]
+        }
+        if (distance >= arcLength) {
+            return arcParameters[arcParameters.size - 1]
+        }
+
+        var k = arcDistances.binarySearch(distance)
+        if (k >= 0) {
+            return arcParameters[k]
+        }
+        k = -k - 2
+
+        val fraction = (distance - arcDistances[k]) / (arcDistances[k + 1] - arcDistances[k])
+        return arcParameters[k] + (arcParameters[k + 1] - arcParameters[k]) * fraction
+    }
+
+    fun pointAtDistance(distance: Double): Coordinate {
+        val parameter = parameterAtDistance(distance)
+        return Coordinate(xInterpolator.evaluate(parameter).toFloat(), yInterpolator.evaluate(parameter).toFloat())
+    }
+
+    fun adaptiveParameters(tolerance: Double): DoubleArray { // Parameters that keep straight lines between them within tolerance of the curve. Nearly straight stretches only keep their nodes, bends get subdivided
+        if (nodeParameters.isEmpty()) {
+            return DoubleArray(0)
+        }
+
+        val parameters = mutableListOf(nodeParameters[0])
+        for (index in 0..<nodeParameters.size - 1) {
+            subdivide(nodeParameters[index], nodeParameters[index + 1], tolerance, 0, parameters)
+        }
+        return parameters.toDoubleArray()
+    }
+
+    private fun subdivide(a: Double, b: Double, tolerance: Double, depth: Int, parameters: MutableList<Double>) { // Adds the parameters needed in (a, b], ending with b
+        if (depth < MAX_SUBDIVISION_DEPTH && chordError(a, b) > tolerance) {
+            val middle = (a + b) / 2
+            subdivide(a, middle, tolerance, depth + 1, parameters)
+            subdivide(middle, b, tolerance, depth + 1, parameters)
+        } else {
+            parameters.add(b)
+        }
+    }
+
+    private fun chordError(a: Double, b: Double): Double { // How far the curve strays from the straight line between a and b, checked at the quarter points so S bends are caught
+        val start = Vector2f(xInterpolator.evaluate(a).toFloat(), yInterpolator.evaluate(a).toFloat())
+        val end = Vector2f(xInterpolator.evaluate(b).toFloat(), yInterpolator.evaluate(b).toFloat())
+        var error = 0.0
+        for (fraction in doubleArrayOf(0.25, 0.5, 0.75)) {
+            val parameter = a + (b - a) * fraction
+            val point = Vector2f(xInterpolator.evaluate(parameter).toFloat(), yInterpolator.evaluate(parameter).toFloat())
+            error = max(error, distanceFromPointToSegment(point, start, end).toDouble())
+        }
+        return error
+    }
+
+    fun sampleUniform(n: Int): Array<Coordinate> { // n points evenly spaced along the curve, including both ends
+        return Array(n) { index ->
+            pointAtDistance(if (n > 1) arcLength * index / (n - 1) else 0.0)
+        }
     }
 
     fun tOfNode(node: Node): Double {
@@ -81,7 +235,7 @@ class NodeCollectionSetPoint(val time: Int, val id: NodeCollectionID, var nodes:
         for (index in 0..<newSetPoint.nodes.size - 1) {
             val node = newSetPoint.nodes[index]
             val nextNode = newSetPoint.nodes[index + 1]
-            node.edges.add(Edge(id.duplicate(), Pair(node.id.duplicate(), nextNode.id.duplicate())).apply { updateScreenCoords(animation) })
+            animation.nodeEdgeHandler.linkEdge(node, Edge(id.duplicate(), Pair(node.id.duplicate(), nextNode.id.duplicate())).apply { updateScreenCoords(animation) })
         }
         return newSetPoint
     }
@@ -91,4 +245,9 @@ class NodeCollectionSetPoint(val time: Int, val id: NodeCollectionID, var nodes:
             animation.nodeEdgeHandler.removeNode(it, false)
         }
     }
+
+    companion object {
+        const val ARC_LENGTH_SUBDIVISIONS = 8 // Arc length table entries between each pair of nodes
+        const val MAX_SUBDIVISION_DEPTH = 8 // Adaptive sampling splits the stretch between two nodes into at most 2^8 lines
+    }
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
 package com.badlogicgames.waranimationmaker.models
 
 import com.badlogic.gdx.graphics.OrthographicCamera
+import com.badlogic.gdx.utils.IntMap
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+import kotlin.math.max
 
 class NodeEdgeHandler(val animation: Animation) {
 
@@ -10,21 +14,59 @@ class NodeEdgeHandler(val animation: Animation) {
 
     fun addNode(node: Node)
     {
-        animation.nodes.add(node)
+        animation.addNode(node)
         animation.nodeId++
     }
 
+    // Edges pointing at each node, keyed by the target's ID value. Node.edges only holds outgoing edges, this lets deletion find the incoming ones without scanning every node
+    private var incomingEdges = IntMap<MutableList<Edge>>()
+
+    fun indexEdges() { // Rebuilds the incoming edge index, needed after loading
+        incomingEdges = IntMap(animation.nodes.size)
+        animation.nodes.forEach { node -> node.edges.forEach { addIncoming(it) } }
+    }
+
+    fun incomingEdges(node: Node): List<Edge> {
+        return incomingEdges.get(node.id.value) ?: emptyList()
+    }
+
+    private fun addIncoming(edge: Edge) {
+        var edges = incomingEdges.get(edge.segment.second.value)
+        if (edges == null) {
+            edges = mutableListOf()
+            incomingEdges.put(edge.segment.second.value, edges)
+        }
+        edges.add(edge)
+    }
+
+    private fun removeIncoming(edge: Edge) {
+        incomingEdges.get(edge.segment.second.value)?.remove(edge)
+    }
+
+    fun linkEdge(fromNode: Node, edge: Edge) { // Adds edge to fromNode without rebuilding node collections
+        fromNode.edges.add(edge)
+        addIncoming(edge)
+    }
+
+    private fun unlinkEdges(node: Node) { // Removes every edge to or from node without rebuilding node collections
+        for (edge in incomingEdges(node).toList()) {
+            animation.getNodeByID(edge.segment.first)?.edges?.remove(edge)
+        }
+        incomingEdges.remove(node.id.value)
+        node.edges.forEach { removeIncoming(it) }
+        node.edges.clear()
+    }
+
     fun removeNode(removeNode: Node, redirectEdge: Boolean): Boolean
     {
         if (redirectEdge) {
             return removeNode(removeNode)
         } else {
-            animation.nodes.forEach { node ->
-                node.edges.removeIf() { it.segment.second.value == removeNode.id.value }
-            }
-            removeNode.edges.clear()
-            val result = animation.nodes.remove(removeNode)
-            updateNodeCollections()
+            val affected = affectedCollections(removeNode)
+            val neighbours = neighbours(removeNode)
+            unlinkEdges(removeNode)
+            val result = animation.removeNode(removeNode)
+            affected.forEach { updateNodeCollection(removeNode.initTime, it, neighbours) }
             return result
         }
 
@@ -32,26 +74,45 @@ class NodeEdgeHandler(val animation: Animation) {
 
     fun removeNode(removeNode: Node): Boolean
     {
+        val affected = affectedCollections(removeNode)
+        val neighbours = neighbours(removeNode)
         // Redirect edges that point to the node to the next node in the Node Collection, or delete if that does not exist
-        animation.nodes.forEach { node ->
-            node.edges.filter { it.segment.second.value == removeNode.id.value }.forEach { edge ->
-                val matchingEdge = removeNode.edges.find { it.collectionID.value == edge.collectionID.value }
-                if (matchingEdge != null) {
-                    edge.segment = Pair(node.id.duplicate(), matchingEdge.segment.second.duplicate())
-                } else {
-                    node.edges.remove(edge)
-                }
+        for (edge in incomingEdges(removeNode).toList()) {
+            val node = animation.getNodeByID(edge.segment.first) ?: continue
+            val matchingEdge = removeNode.edges.find { it.collectionID.value == edge.collectionID.value }
+            if (matchingEdge != null) {
+                removeIncoming(edge)
+                edge.segment = Pair(node.id.duplicate(), matchingEdge.segment.second.duplicate())
+                addIncoming(edge)
+            } else {
+                node.edges.remove(edge)
+                removeIncoming(edge)
             }
         }
-        removeNode.edges.clear()
-        val result = animation.nodes.remove(removeNode)
-        updateNodeCollections()
+        unlinkEdges(removeNode)
+        val result = animation.removeNode(removeNode)
+        affected.forEach { updateNodeCollection(removeNode.initTime, it, neighbours) }
         return result
     }
 
+    private fun neighbours(node: Node): List<Node> { // Nodes with an edge to or from node, which are all that is left of its collections' components once it is gone
+        val neighbours = mutableListOf<Node>()
+        node.edges.forEach { edge -> animation.getNodeByID(edge.segment.second)?.let { neighbours.add(it) } }
+        incomingEdges(node).forEach { edge -> animation.getNodeByID(edge.segment.first)?.let { neighbours.add(it) } }
+        return neighbours
+    }
+
+    private fun affectedCollections(node: Node): Set<Int> { // IDs of the node collections that have an edge to or from node
+        val collectionIDs = mutableSetOf<Int>()
+        node.edges.forEach { collectionIDs.add(it.collectionID.value) }
+        incomingEdges(node).forEach { collectionIDs.add(it.collectionID.value) }
+        return collectionIDs
+    }
+
     fun addEdge(fromNode: Node, toNode: Node, id: Int) {
         if (!fromNode.edges.map { it.collectionID.value }.contains(id) && fromNode.initTime == toNode.initTime) { // Adding an edge from a node that already has an edge with the same collectionID is not allowed
-            fromNode.edges.add(
+            linkEdge(
+                fromNode,
                 Edge(
                     NodeCollectionID(id),
                     Pair(fromNode.id, toNode.id),
@@ -59,18 +120,16 @@ class NodeEdgeHandler(val animation: Animation) {
             )
         }
 
-        updateNodeCollections()
+        updateNodeCollection(fromNode.initTime, id, listOf(fromNode, toNode))
     }
 
     fun removeEdge(removeEdge: Edge) : Boolean {
-        var removed = false
-        for (node in animation.nodes) {
-            if (node.edges.remove(removeEdge)) {
-                removed = true
-            }
+        val fromNode = animation.getNodeByID(removeEdge.segment.first) ?: return false
+        val removed = fromNode.edges.remove(removeEdge)
+        if (removed) {
+            removeIncoming(removeEdge)
+            updateNodeCollection(fromNode.initTime, removeEdge.collectionID.value, listOfNotNull(fromNode, animation.getNodeByID(removeEdge.segment.second)))
         }
-
-        updateNodeCollections()
         return removed
     }
 
@@ -78,58 +137,181 @@ class NodeEdgeHandler(val animation: Animation) {
 
     }
 
-    private fun traverse(node: Node, nodeCollections: MutableList<NodeCollectionSetPoint>, currentBranch: NodeCollectionSetPoint) {
-        val visited = (node.visitedBy.find { (it.value == currentBranch.id.value) } != null)
-        if (visited) {
-            val matchingNodeCollections = nodeCollections.filter { it.id.value == currentBranch.id.value }
-            for (nodeCollection in matchingNodeCollections) {
-                if (node.id.value == nodeCollection.nodes.first().id.value) { // If the current node is the first node of an existing Node Collection with the same CollectionID, this branch is part of that Node Collection, so add this branch at the beginning of it
-                    nodeCollection.nodes.addAll(0, currentBranch.nodes)
-                    return
+    // Visit marks indexed by node ID value. A node is visited in a traversal when its stamp equals that traversal's epoch, so starting a traversal never has to clear anything
+    // Parallel traversals share the array: each gets its own epoch and they walk disjoint nodes, so they never write the same stamp
+    private var visitStamps = IntArray(0)
+    private var visitEpoch = 0
+
+    private fun reserveVisitStamps(size: Int) {
+        if (size > visitStamps.size) {
+            visitStamps = visitStamps.copyOf(max(size, visitStamps.size * 2))
+        }
+    }
+
+    private fun visit(node: Node, epoch: Int): Boolean { // Marks node as visited, returns false if it already was
+        val index = node.id.value
+        reserveVisitStamps(index + 1)
+        if (visitStamps[index] == epoch) {
+            return false
+        }
+        visitStamps[index] = epoch
+        return true
+    }
+
+    // Walks one collection's edges from start. Each node has at most one edge per collection, so a branch is a chain and can be followed with a loop instead of recursion
+    private fun traverse(start: Node, nodeCollections: MutableList<NodeCollectionSetPoint>, currentBranch: NodeCollectionSetPoint, epoch: Int) {
+        var node = start
+
+        while (true) {
+            if (!visit(node, epoch)) {
+                for (nodeCollection in nodeCollections) {
+                    if (nodeCollection.id.value == currentBranch.id.value && node.id.value == nodeCollection.nodes.first().id.value) { // If the current node is the first node of an existing Node Collection with the same CollectionID, this branch is part of that Node Collection, so add this branch at the beginning of it
+                        nodeCollection.nodes.addAll(0, currentBranch.nodes)
+                        return
+                    }
+                }
+                if (currentBranch.nodes.isNotEmpty()) {
+                    if (node.id.value == currentBranch.nodes.first().id.value) { // If the current node is the first node of the current branch, it is forming a loop, so add it to the list
+                        nodeCollections.add(currentBranch.apply { nodes.add(node) })
+                        return
+                    }
+                    nodeCollections.add(currentBranch) // Ran into the middle of another branch, keep what was walked so far as its own set point
+                    println("Warning: Ambiguous topology")
+                }
+                return
+            }
+
+            var nextNode: Node? = null
+            for (edge in node.edges) { // The first edge that continues the Node Collection that is being constructed
+                val candidate = animation.getNodeByID(edge.segment.second)!!
+                if (edge.collectionID.value == currentBranch.id.value && candidate.initTime == currentBranch.time) {
+                    nextNode = candidate
+                    break
                 }
             }
-            if (currentBranch.nodes.isNotEmpty()) {
-                if (node.id.value == currentBranch.nodes.first().id.value) { // If the current node is the first node of the current branch, it is forming a loop, so add it to the list
+
+            if (nextNode == null) { // If no edges continue the Node Collection that is being constructed, that means the end has been reached, so add the current branch and stop
+                if (currentBranch.nodes.isNotEmpty()) {
                     nodeCollections.add(currentBranch.apply { nodes.add(node) })
-                    return
                 }
-                nodeCollections.add(currentBranch)
-                println("Warning: Ambiguous topology")
+                return
+            }
+
+            currentBranch.nodes.add(node)
+            node = nextNode
+        }
+    }
+
+    fun updateNodeCollections(parallel: Boolean = true) { // Rebuilds every node collection at every time, needed after loading
+        val startNodes = LinkedHashMap<Pair<Int, Int>, MutableList<Node>>() // Nodes with an edge in each (time, collection ID), in node order
+        for (node in animation.nodes) {
+            for (edge in node.edges) {
+                startNodes.getOrPut(Pair(node.initTime, edge.collectionID.value)) { mutableListOf() }.add(node)
             }
+        }
+
+        if (!parallel || animation.nodes.size < PARALLEL_REBUILD_NODES) {
+            startNodes.forEach { (key, nodes) -> rebuild(nodes, key.second) }
             return
         }
 
-        var reachedEnd = true
+        // Edges only connect nodes with the same initTime, so each time's traversals touch their own nodes and can run at once
+        // Traversal only reads the graph. Resolving IDs and updating collections changes the animation, so the results are applied afterwards in the same order as a sequential rebuild
+        val keys = startNodes.keys.toList()
+        val epochs = IntArray(keys.size) { ++visitEpoch }
+        reserveVisitStamps((animation.nodes.maxOfOrNull { it.id.value } ?: 0) + 1)
 
-        node.visitedBy.add(currentBranch.id)
+        val partitions = LinkedHashMap<Int, MutableList<Int>>() // Indices into keys at each time
+        keys.forEachIndexed { index, key -> partitions.getOrPut(key.first) { mutableListOf() }.add(index) }
 
-        for (edge in node.edges) { // Traverses every available edge from the node
-            val nextNode = animation.getNodeByID(edge.segment.second)!!
-            if (edge.collectionID.value == currentBranch.id.value && nextNode.initTime == currentBranch.time) { // If edge continues the Node Collection that is being constructed, then continue recursion with this branch
-                reachedEnd = false
-                traverse(nextNode, nodeCollections, currentBranch.apply { nodes.add(node) })
+        val traversed = arrayOfNulls<MutableList<NodeCollectionSetPoint>>(keys.size)
+        val tasks = partitions.values.map { indices ->
+            Callable {
+                for (index in indices) {
+                    traversed[index] = collect(startNodes[keys[index]]!!, keys[index].second, epochs[index])
+                }
             }
         }
+        ForkJoinPool.commonPool().invokeAll(tasks).forEach { it.get() } // get rethrows anything a traversal threw
+
+        traversed.forEach { store(it!!) }
+    }
 
-        if (reachedEnd && currentBranch.nodes.isNotEmpty()) { // If no edges continue the Node Collection that is being constructed, that means the end has been reached, so add the current branch and stop
-            nodeCollections.add(currentBranch.apply { nodes.add(node) })
+    fun updateNodeCollections(time: Int, collectionIDs: Set<Int>) { // Rebuilds several node collections at one time with a single pass over that time's nodes
+        val startNodes = LinkedHashMap<Int, MutableList<Node>>()
+        for (node in animation.nodesAt(time)) {
+            for (edge in node.edges) {
+                if (edge.collectionID.value in collectionIDs) {
+                    startNodes.getOrPut(edge.collectionID.value) { mutableListOf() }.add(node)
+                }
+            }
         }
+        startNodes.forEach { (collectionID, nodes) -> rebuild(nodes, collectionID) }
     }
 
-    fun updateNodeCollections() {
+    // Rebuilds only the set point of one node collection at one time. Edges only connect nodes with the same initTime, so an edit can not change any other
+    // Only the nodes joined to seeds, the nodes the edit touched, by the collection's edges are visited. They are started from in ID order, the order nodesAt gives since IDs count up as nodes are added,
+    // so the set point is the same as one traversed from every node at that time
+    fun updateNodeCollection(time: Int, collectionID: Int, seeds: Collection<Node>) {
+        animation.getNodeCollection(NodeCollectionID(collectionID))?.detachHolds(time, animation) // Also when the edit left no set point to rebuild
+        rebuild(component(seeds.filter { it.initTime == time }, collectionID), collectionID)
+    }
+
+    private fun component(seeds: Collection<Node>, collectionID: Int): List<Node> { // Nodes joined to seeds by edges of the collection in either direction, sorted by ID
+        val epoch = ++visitEpoch
+        val found = mutableListOf<Node>()
+        val stack = ArrayDeque<Node>()
+        for (seed in seeds) {
+            if (animation.getNodeByID(seed.id) === seed && visit(seed, epoch)) { // Deleted seeds are skipped
+                stack.addLast(seed)
+            }
+        }
+        while (stack.isNotEmpty()) {
+            val node = stack.removeLast()
+            found.add(node)
+            for (edge in node.edges) {
+                val next = animation.getNodeByID(edge.segment.second)
+                if (edge.collectionID.value == collectionID && next != null && visit(next, epoch)) {
+                    stack.addLast(next)
+                }
+            }
+            for (edge in incomingEdges(node)) {
+                val previous = animation.getNodeByID(edge.segment.first)
+                if (edge.collectionID.value == collectionID && previous != null && visit(previous, epoch)) {
+                    stack.addLast(previous)
+                }
+            }
+        }
+        found.sortBy { it.id.value }
+        return found
+    }
+
+    private fun rebuild(startNodes: Collection<Node>, collectionID: Int) {
+        store(collect(startNodes, collectionID, ++visitEpoch))
+    }
+
+    private fun collect(startNodes: Collection<Node>, collectionID: Int, epoch: Int): MutableList<NodeCollectionSetPoint> { // Traverses the collection's set points from startNodes without changing anything
         val nodeCollectionSetPoints = mutableListOf<NodeCollectionSetPoint>()
 
-        for (node in animation.nodes) { // Build all node collections in all time
+        for (node in startNodes) { // Build the node collection starting from the given nodes
             for (edge in node.edges) {
+                if (edge.collectionID.value != collectionID) {
+                    continue
+                }
                 traverse(
                     node,
                     nodeCollectionSetPoints,
-                    NodeCollectionSetPoint(node.initTime, NodeCollectionID(edge.collectionID.value))
+                    NodeCollectionSetPoint(node.initTime, NodeCollectionID(edge.collectionID.value)),
+                    epoch
                 )
             }
         }
 
         nodeCollectionSetPoints.removeIf { it.nodes.isEmpty() }
+        return nodeCollectionSetPoints
+    }
+
+    private fun store(nodeCollectionSetPoints: MutableList<NodeCollectionSetPoint>) { // Resolves duplicate IDs and stores the traversed set points in their node collections
 
         val usedIDsAtTime = mutableListOf<Pair<Int, Int>>() // Keep track of duplicate IDs, but only if at the same time. Set points for the same Node Collection should have the same ID. Pair(time, id)
         for (i in 0..<nodeCollectionSetPoints.size) {
@@ -158,24 +340,33 @@ class NodeEdgeHandler(val animation: Animation) {
                 val newNodeCollection = NodeCollection(NodeCollectionID(animation.nodeCollectionID))
                 animation.nodeCollectionID++
                 println("Warning: Created node collection ${newNodeCollection.id.value}")
-                newNodeCollection.interpolator.newSetPoint(nodeCollectionSetPoint.time, nodeCollectionSetPoint)
-                animation.nodeCollections.add(newNodeCollection)
+                newNodeCollection.setRebuiltSetPoint(nodeCollectionSetPoint, animation)
+                animation.addNodeCollection(newNodeCollection)
                 newNodeCollection.buildInputs()
             } else {
-                existingNodeCollection.interpolator.newSetPoint(nodeCollectionSetPoint.time, nodeCollectionSetPoint)
+                existingNodeCollection.setRebuiltSetPoint(nodeCollectionSetPoint, animation)
             }
         }
     }
 
     fun update(time: Int, camera: OrthographicCamera, paused: Boolean) {
-        animation.nodes.forEach { it.update(camera, time) }
-        animation.nodeCollections.forEach { it.update(time, paused) }
+        animation.nodesAt(time).forEach { it.update(camera, time) } // Nodes are only shown, clicked and traversed at their own time
+        animation.nodeCollections.forEach { it.update(time, paused, camera.zoom) }
     }
 
     fun insert(at: Node, node: Node) {
-        at.edges.forEach {
-            animation.getNodeCollection(it.collectionID)!!.interpolator.setPoints[at.initTime]?.insert(at, node)
+        at.edges.forEach { removeIncoming(it) } // insert redirects at's edges, so reindex them afterwards
+        at.edges.toList().forEach {
+            val nodeCollection = animation.getNodeCollection(it.collectionID)!!
+            nodeCollection.detachHolds(at.initTime, animation) // The set point's node list is changed in place
+            nodeCollection.interpolator.setPoints[at.initTime]?.insert(at, node)
         }
-        updateNodeCollections()
+        at.edges.forEach { addIncoming(it) }
+        node.edges.forEach { addIncoming(it) }
+        at.edges.map { it.collectionID.value }.distinct().forEach { updateNodeCollection(at.initTime, it, listOf(at, node)) }
+    }
+
+    companion object {
+        const val PARALLEL_REBUILD_NODES = 10000 // Below this many nodes a full rebuild is quicker than handing it to other threads
     }
 }
@@ -73,14 +73,37 @@ abstract class ScreenObject : InterpolatedObject, HasScreenPosition, Clickable,
         return (x - screenPosition.x).absoluteValue <= 10 && (y - screenPosition.y).absoluteValue <= 10
     }
 
+    // Time, set point versions and camera that position and screenPosition were last computed for, so paused frames skip recomputing them
+    @Transient private var memoized = false
+    @Transient private var memoTime = 0
+    @Transient private var memoVersion = 0
+    @Transient private var memoZoom = 0f
+    @Transient private var memoCx = 0f
+    @Transient private var memoCy = 0f
+
     open fun goToTime(time: Int, zoom: Float, cx: Float, cy: Float): Boolean {
-        super.goToTime(time)
-        updateScreenPosition(zoom, cx, cy)
+        val moved = xInterpolator == null || !memoized || time != memoTime || setPointVersion() != memoVersion
+        if (moved) {
+            super.goToTime(time)
+            memoTime = time
+            memoVersion = setPointVersion()
+        }
+        if (moved || zoom != memoZoom || cx != memoCx || cy != memoCy) {
+            updateScreenPosition(zoom, cx, cy)
+            memoZoom = zoom
+            memoCx = cx
+            memoCy = cy
+        }
+        memoized = true
         return shouldDraw(time)
     }
 
+    protected fun setPointVersion(): Int { // Both versions only ever increase, so their sum changes whenever either set point map does
+        return xInterpolator.setPointVersion + yInterpolator.setPointVersion
+    }
+
     override fun shouldDraw(time: Int): Boolean {
-        return time >= xInterpolator.setPoints.keys.first()
+        return time >= xInterpolator.setPoints.firstKey()
     }
 
     override fun toString(): String {
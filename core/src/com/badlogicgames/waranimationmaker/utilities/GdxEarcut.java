@@ -28,8 +28,16 @@ public final class GdxEarcut {
     }
 
     public static IntArray earcut (float[] data, int[] holeIndices, int dim) {
-        boolean hasHoles = holeIndices != null && holeIndices.length > 0;
-        int outerLen = hasHoles ? holeIndices[0] * dim : data.length;
+        return earcut(data, data.length, holeIndices, holeIndices != null ? holeIndices.length : 0, dim);
+    }
+
+    /**
+     * Triangulates the first length values of data, so a reused buffer larger than the polygon can be passed. Only the
+     * first holeCount entries of holeIndices are read. The returned array is reused by the next call
+     */
+    public static IntArray earcut (float[] data, int length, int[] holeIndices, int holeCount, int dim) {
+        boolean hasHoles = holeIndices != null && holeCount > 0;
+        int outerLen = hasHoles ? holeIndices[0] * dim : length;
 
         triangles.clear();
 
@@ -49,10 +57,10 @@ public final class GdxEarcut {
         float invSize = Float.MIN_VALUE;
 
         if (hasHoles) {
-            outerNode = eliminateHoles(data, holeIndices, outerNode, dim);
+            outerNode = eliminateHoles(data, length, holeIndices, holeCount, outerNode, dim);
         }
 
-        if (data.length > 80 * dim) {
+        if (length > 80 * dim) {
             minX = maxX = data[0];
             minY = maxY = data[1];
 
@@ -439,13 +447,12 @@ public final class GdxEarcut {
         return list;
     }
 
-    private static Node eliminateHoles (float[] data, int[] holeIndices, Node outerNode, int dim) {
+    private static Node eliminateHoles (float[] data, int length, int[] holeIndices, int holeCount, Node outerNode, int dim) {
         tempQueue.clear();
 
-        int len = holeIndices.length;
-        for (int i = 0; i < len; i++) {
+        for (int i = 0; i < holeCount; i++) {
             int start = holeIndices[i] * dim;
-            int end = i < len - 1 ? holeIndices[i + 1] * dim : data.length;
+            int end = i < holeCount - 1 ? holeIndices[i + 1] * dim : length;
             Node list = linkedList(data, start, end, dim, false);
             if (list == list.next) {
                 list.steiner = true;
@@ -0,0 +1,85 @@
+package com.badlogicgames.waranimationmaker
+
+import com.badlogicgames.waranimationmaker.models.Animation
+import com.badlogicgames.waranimationmaker.models.NodeCollection
+import java.io.File
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class ShapeImporterTest {
+    private fun import(name: String, text: String): Animation {
+        val folder = kotlin.io.path.createTempDirectory("imports").toFile()
+        val file = File(folder, name)
+        file.writeText(text)
+        val animation = Animation()
+        animation.init()
+        ShapeImporter.importFiles(listOf(file), animation, 0, 0f, 0f, 100f, 100f)
+        folder.deleteRecursively()
+        return animation
+    }
+
+    private fun nodeCount(nodeCollection: NodeCollection): Int { // Set points of loops end with their first node again
+        return nodeCollection.interpolator.setPoints[0]?.nodes?.map { it.id.value }?.distinct()?.size ?: 0
+    }
+
+    // Type, node count and holes of every collection, in the order they were added
+    private fun shapes(animation: Animation): List<String> {
+        return animation.nodeCollections.map { "${it.type} ${nodeCount(it)} ${it.holes}" }
+    }
+
+    @Test
+    fun geoJson() {
+        val animation = import("shapes.geojson", """
+            {"type": "FeatureCollection", "features": [
+                {"type": "Feature", "geometry": {"type": "Point", "coordinates": [5, 5]}},
+                {"type": "Feature", "geometry": {"coordinates": [[0, 0], [10, 0], [10, 10]], "type": "LineString"}},
+                {"type": "Feature", "geometry": {"type": "MultiPoint", "coordinates": [[1, 1], [2, 2]]}},
+                {"type": "Feature", "geometry": {"type": "Polygon", "coordinates": [
+                    [[0, 0], [10, 0], [10, 10], [0, 10], [0, 0]],
+                    [[2, 2], [4, 2], [4, 4], [2, 2]]
+                ]}},
+                {"type": "Feature", "geometry": {"type": "MultiPolygon", "coordinates": [
+                    [[[20, 0], [30, 0], [30, 10], [20, 0]]],
+                    [[[40, 0], [50, 0], [50, 10], [40, 10], [40, 0]], [[42, 2], [44, 2], [44, 4], [42, 2]], [[46, 2], [48, 2], [48, 4], [46, 2]]]
+                ]}},
+                {"type": "Feature", "geometry": {"type": "MultiLineString", "coordinates": [[[0, 20], [10, 20]], [[0, 30], [10, 30], [10, 40], [0, 30]]]}}
+            ]}
+        """)
+        assertEquals(listOf(
+            "Line 3 []", "Area 4 [2]", "None 3 []", // Closing positions are not made into nodes
+            "Area 3 []", "Area 4 [5, 6]", "None 3 []", "None 3 []",
+            "Line 2 []", "Area 3 []" // The lines of a MultiLineString are not holes, even closed ones
+        ), shapes(animation))
+    }
+
+    @Test
+    fun wkt() {
+        val animation = import("shapes.wkt", """
+            POINT (5 5)
+            LINESTRING (0 0, 10 0, 10 10)
+            POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 4 2, 4 4, 2 2))
+            MULTIPOINT ((1 1), (2 2))
+            MULTIPOLYGON (((20 0, 30 0, 30 10, 20 0)), ((40 0, 50 0, 50 10, 40 10, 40 0), (42 2, 44 2, 44 4, 42 2)))
+            GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 20, 10 20))
+        """)
+        assertEquals(listOf("Line 3 []", "Area 4 [2]", "None 3 []", "Area 3 []", "Area 4 [5]", "None 3 []", "Line 2 []"), shapes(animation))
+    }
+
+    @Test
+    fun csv() {
+        val animation = import("shapes.csv", """
+            x,y,name
+            0,0,a
+            10,0,a
+            10,10,a
+            0,0,a
+            20,0,b
+            30,0,b
+
+            40,0
+            50,0
+            50,10
+        """.trimIndent())
+        assertEquals(listOf("Area 3 []", "Line 2 []", "Line 3 []"), shapes(animation))
+    }
+}
@@ -0,0 +1,42 @@
+package com.badlogicgames.waranimationmaker.interpolator
+
+import java.util.*
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class DoubleInterpolationFunctionTest {
+    // Evaluates to the segment found, so the cursor lookup can be checked directly
+    private class SegmentFunction(i: DoubleArray) : DoubleInterpolationFunction(i, DoubleArray(i.size)) {
+        override fun init() {}
+
+        override fun evaluate(at: Double): Double = segmentIndex(at).toDouble()
+    }
+
+    private fun binarySearchSegment(i: DoubleArray, at: Double): Int {
+        val found = i.binarySearch(at)
+        return if (found >= 0) found else -found - 2
+    }
+
+    // The cursor is only a shortcut, whatever order the lookups come in they must agree with a fresh binary search
+    @Test
+    fun cursorMatchesBinarySearch() {
+        val random = Random(2)
+        val knots = DoubleArray(50)
+        for (k in 1 until knots.size) {
+            knots[k] = knots[k - 1] + 1 + random.nextInt(10)
+        }
+        val function = SegmentFunction(knots)
+        val last = knots[knots.size - 1]
+
+        var at = 0.5
+        repeat(10000) {
+            at = when (random.nextInt(4)) {
+                0 -> random.nextDouble() * last // Jump anywhere
+                1 -> knots[1 + random.nextInt(knots.size - 2)] // Exactly on a knot
+                2 -> at + random.nextDouble() * 5 // Playback moving forward
+                else -> at - random.nextDouble() * 5 // Scrubbing back
+            }.coerceIn(0.001, last - 0.001)
+            assertEquals(binarySearchSegment(knots, at), function.evaluate(at).toInt(), "at $at")
+        }
+    }
+}
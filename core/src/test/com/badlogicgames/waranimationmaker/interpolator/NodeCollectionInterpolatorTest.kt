@@ -0,0 +1,123 @@
+package com.badlogicgames.waranimationmaker.interpolator
+
+import com.badlogicgames.waranimationmaker.models.*
+import java.util.*
+import kotlin.math.hypot
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class NodeCollectionInterpolatorTest {
+    private val times = intArrayOf(0, 30, 75, 100)
+
+    private fun interpolator(): NodeCollectionInterpolator {
+        val random = Random(4)
+        val interpolator = NodeCollectionInterpolator()
+        for (time in times) {
+            val nodes = (0..6).map { Node(Coordinate(it * 60f + random.nextInt(40), random.nextInt(90).toFloat()), time, NodeID(it)) }.toMutableList()
+            interpolator.newSetPoint(time, NodeCollectionSetPoint(time, NodeCollectionID(0), nodes))
+        }
+        return interpolator
+    }
+
+    // Same merge of every set point's parameters as the interpolator's adaptive grid
+    private fun adaptiveParameters(interpolator: NodeCollectionInterpolator, tolerance: Double): List<Double> {
+        val parameters = mutableListOf<Double>()
+        for (parameter in interpolator.setPoints.values.flatMap { it.adaptiveParameters(tolerance).asList() }.sorted()) {
+            if (parameters.isEmpty() || parameter - parameters.last() > 1e-9) {
+                parameters.add(parameter)
+            }
+        }
+        return parameters
+    }
+
+    // Adaptive sampling draws the grid samples themselves, so every drawn point can be checked against a PCHIP through time built for that frame from scratch,
+    // which is how outlines were evaluated before the morph plan. Checked at the set points, between them and outside them
+    @Test
+    fun morphPlanMatchesPerFramePchip() {
+        val interpolator = interpolator()
+        val tolerance = 1f
+        interpolator.evaluate(0, tolerance)
+        val parameters = adaptiveParameters(interpolator, tolerance.toDouble())
+        val keys = interpolator.setPoints.keys.toTypedArray()
+
+        for (time in -10..110) {
+            val coordinates = interpolator.evaluate(time, tolerance)
+            assertEquals(parameters.size, coordinates.size)
+            for ((index, parameter) in parameters.withIndex()) {
+                val xs = interpolator.setPoints.values.map { it.xInterpolator.evaluate(parameter) }.toDoubleArray()
+                val ys = interpolator.setPoints.values.map { it.yInterpolator.evaluate(parameter) }.toDoubleArray()
+                val clamped = time.coerceIn(times.first(), times.last())
+                assertEquals(PCHIPInterpolationFunction(keys, xs).evaluate(clamped), coordinates[index].x.toDouble(), 1e-3, "x at time $time, parameter $parameter")
+                assertEquals(PCHIPInterpolationFunction(keys, ys).evaluate(clamped), coordinates[index].y.toDouble(), 1e-3, "y at time $time, parameter $parameter")
+            }
+        }
+    }
+
+    private fun distanceToPolyline(x: Double, y: Double, coordinates: Array<Coordinate>): Double {
+        var nearest = Double.MAX_VALUE
+        for (index in 0 until coordinates.size - 1) {
+            val ax = coordinates[index].x.toDouble()
+            val ay = coordinates[index].y.toDouble()
+            val dx = coordinates[index + 1].x - ax
+            val dy = coordinates[index + 1].y - ay
+            val lengthSquared = dx * dx + dy * dy
+            val t = if (lengthSquared == 0.0) 0.0 else (((x - ax) * dx + (y - ay) * dy) / lengthSquared).coerceIn(0.0, 1.0)
+            nearest = minOf(nearest, hypot(x - ax - t * dx, y - ay - t * dy))
+        }
+        return nearest
+    }
+
+    // The adaptive tolerance is in pixels, so zoomed in the outline must follow the curve more closely in world units
+    @Test
+    fun adaptiveToleranceIsInPixels() {
+        val interpolator = interpolator()
+        val tolerance = 1f
+        val setPoint = interpolator.setPoints[0]!!
+        for (zoom in floatArrayOf(0.25f, 1f, 3f, 8f)) {
+            val coordinates = interpolator.evaluate(0, tolerance, zoom)
+            var worst = 0.0
+            for (step in 0..2000) {
+                val parameter = step / 2000.0
+                worst = maxOf(worst, distanceToPolyline(setPoint.xInterpolator.evaluate(parameter), setPoint.yInterpolator.evaluate(parameter), coordinates))
+            }
+            assertTrue(worst * zoom <= tolerance * 1.5, "strays ${worst * zoom} pixels at zoom $zoom")
+        }
+    }
+
+    // Caches like the triangulation rebuild whenever coordinatesVersion changes, so it must only change when a frame looks different
+    @Test
+    fun coordinatesVersionOnlyChangesWithTheOutline() {
+        val interpolator = interpolator()
+        interpolator.newSetPoint(150, NodeCollectionSetPoint(150, NodeCollectionID(0), interpolator.setPoints[100]!!.nodes)) // Held from 100 to 150
+        for (tolerance in arrayOf(null, 1f)) {
+            interpolator.evaluate(-20, tolerance)
+            var version = interpolator.coordinatesVersion
+            for (time in -19..-1) { // Before the first set point
+                interpolator.evaluate(time, tolerance)
+            }
+            assertEquals(version, interpolator.coordinatesVersion)
+
+            interpolator.evaluate(100, tolerance)
+            version = interpolator.coordinatesVersion
+            for (time in 101..200) { // Held, then after the last set point
+                interpolator.evaluate(time, tolerance)
+            }
+            assertEquals(version, interpolator.coordinatesVersion)
+
+            for (time in 1..10) { // Moving
+                interpolator.evaluate(time, tolerance)
+                assertEquals(++version, interpolator.coordinatesVersion)
+            }
+        }
+
+        val single = NodeCollectionInterpolator()
+        single.newSetPoint(0, interpolator.setPoints[0]!!)
+        single.evaluate(0)
+        val version = single.coordinatesVersion
+        for (time in 1..20) {
+            single.evaluate(time)
+        }
+        assertEquals(version, single.coordinatesVersion)
+    }
+}
@@ -0,0 +1,37 @@
+package com.badlogicgames.waranimationmaker.interpolator
+
+import java.util.*
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class PCHIPDoubleInterpolationFunctionTest {
+    // set and remove only recompute the slopes next to the edit, so after any sequence of edits the function must match one built from scratch
+    @Test
+    fun patchedSlopesMatchFullInit() {
+        val random = Random(1)
+        val knots = TreeMap<Double, Double>()
+        knots[0.0] = 0.0
+        val function = PCHIPDoubleInterpolationFunction(doubleArrayOf(0.0), doubleArrayOf(0.0))
+
+        repeat(500) {
+            if (knots.size > 2 && random.nextInt(3) == 0) {
+                val at = knots.keys.elementAt(random.nextInt(knots.size))
+                knots.remove(at)
+                function.remove(at)
+            } else {
+                val at = random.nextInt(200).toDouble() // Often lands on an existing knot, which changes its value
+                val value = random.nextDouble() * 100 - 50
+                knots[at] = value
+                function.set(at, value)
+            }
+
+            val rebuilt = PCHIPDoubleInterpolationFunction(knots.keys.toDoubleArray(), knots.values.toDoubleArray())
+            assertEquals(rebuilt.size, function.size)
+            var at = -1.0
+            while (at <= 201.0) {
+                assertEquals(rebuilt.evaluate(at), function.evaluate(at), 1e-9, "at $at")
+                at += 0.25
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.badlogicgames.waranimationmaker.models
+
+import java.util.*
+import kotlin.math.hypot
+import kotlin.test.Test
+import kotlin.test.assertTrue
+
+class DouglasPeuckerTest {
+    private fun distanceToSegment(px: Double, py: Double, ax: Double, ay: Double, bx: Double, by: Double): Double {
+        val dx = bx - ax
+        val dy = by - ay
+        val lengthSquared = dx * dx + dy * dy
+        if (lengthSquared == 0.0) {
+            return hypot(px - ax, py - ay)
+        }
+        val t = (((px - ax) * dx + (py - ay) * dy) / lengthSquared).coerceIn(0.0, 1.0)
+        return hypot(px - ax - t * dx, py - ay - t * dy)
+    }
+
+    // Both ends are kept and every dropped point lies within tolerance of the segment between the kept points around it
+    @Test
+    fun keepsEndsAndStaysWithinTolerance() {
+        val random = Random(3)
+        for (tolerance in doubleArrayOf(0.0, 0.5, 2.0, 10.0)) {
+            repeat(50) {
+                val count = 2 + random.nextInt(200)
+                val xs = DoubleArray(count)
+                val ys = DoubleArray(count)
+                for (index in 1 until count) { // Random walk, with some repeated points
+                    xs[index] = xs[index - 1] + if (random.nextInt(10) == 0) 0.0 else random.nextGaussian() * 3
+                    ys[index] = ys[index - 1] + if (random.nextInt(10) == 0) 0.0 else random.nextGaussian() * 3
+                }
+                val keep = BooleanArray(count)
+                douglasPeucker(xs, ys, count, tolerance, keep)
+
+                assertTrue(keep[0] && keep[count - 1])
+                var previous = 0
+                for (index in 1 until count) {
+                    if (!keep[index]) {
+                        continue
+                    }
+                    for (dropped in previous + 1 until index) {
+                        val distance = distanceToSegment(xs[dropped], ys[dropped], xs[previous], ys[previous], xs[index], ys[index])
+                        assertTrue(distance <= tolerance + 1e-9, "point $dropped is $distance from the simplified line, tolerance $tolerance")
+                    }
+                    previous = index
+                }
+            }
+        }
+    }
+}
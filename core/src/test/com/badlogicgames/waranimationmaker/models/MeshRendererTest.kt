@@ -0,0 +1,73 @@
+package com.badlogicgames.waranimationmaker.models
+
+import com.badlogic.gdx.Gdx
+import com.badlogic.gdx.graphics.Color
+import com.badlogic.gdx.graphics.GL20
+import com.badlogic.gdx.graphics.glutils.ShaderProgram
+import com.badlogic.gdx.math.Matrix4
+import com.badlogic.gdx.utils.GdxNativesLoader
+import java.lang.reflect.Proxy
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class MeshRendererTest {
+    private var uploads = 0 // Buffer data calls, which is every time vertices reach the GPU
+
+    // No GL context in tests, so every GL call is answered with a default value and uploads are counted. Vertex buffers still need the native library
+    @BeforeTest
+    fun fakeGl() {
+        GdxNativesLoader.load()
+        val gl = Proxy.newProxyInstance(GL20::class.java.classLoader, arrayOf(GL20::class.java)) { _, method, _ ->
+            if (method.name == "glBufferData" || method.name == "glBufferSubData") {
+                uploads++
+            }
+            when (method.returnType) {
+                Int::class.javaPrimitiveType -> 0
+                Float::class.javaPrimitiveType -> 0f
+                Boolean::class.javaPrimitiveType -> false
+                String::class.java -> ""
+                else -> null
+            }
+        } as GL20
+        Gdx.gl = gl
+        Gdx.gl20 = gl
+        ShaderProgram.pedantic = false
+    }
+
+    private fun line(vararg times: Int): NodeCollection {
+        val nodeCollection = NodeCollection(NodeCollectionID(0))
+        nodeCollection.type = "Line"
+        for ((index, time) in times.withIndex()) {
+            val nodes = (0..4).map { Node(Coordinate(it * 100f, (it % 2) * 50f + index * 30f), time, NodeID(it)) }.toMutableList()
+            nodeCollection.interpolator.newSetPoint(time, NodeCollectionSetPoint(time, NodeCollectionID(0), nodes))
+        }
+        return nodeCollection
+    }
+
+    private fun drawFrames(renderer: MeshRenderer, nodeCollection: NodeCollection, frames: IntRange) {
+        for (time in frames) {
+            nodeCollection.update(time, false)
+            renderer.begin(Matrix4(), 1f, 0f, 0f)
+            renderer.drawLine(nodeCollection, 5f, Color.RED, 1f)
+            renderer.end()
+        }
+    }
+
+    @Test
+    fun staticLineIsUploadedOnce() {
+        val renderer = MeshRenderer(ShaderProgram("", ""))
+        val nodeCollection = line(0, 100, 200)
+        nodeCollection.interpolator.newSetPoint(300, nodeCollection.interpolator.setPoints[200]!!) // Held from 200 to 300
+
+        drawFrames(renderer, nodeCollection, 200..200)
+        val afterFirstFrame = uploads
+        assertTrue(afterFirstFrame > 0)
+        drawFrames(renderer, nodeCollection, 201..400) // Held, then after the last set point
+        assertEquals(afterFirstFrame, uploads)
+
+        drawFrames(renderer, nodeCollection, 50..60) // Moving lines are uploaded again
+        assertTrue(uploads > afterFirstFrame)
+    }
+}
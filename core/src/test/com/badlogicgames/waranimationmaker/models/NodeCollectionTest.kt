@@ -0,0 +1,78 @@
+package com.badlogicgames.waranimationmaker.models
+
+import com.badlogicgames.waranimationmaker.FileHandler
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+
+class NodeCollectionTest {
+    private fun animation(): Pair<Animation, NodeCollection> { // One line of six nodes at time 0
+        val animation = Animation()
+        animation.init()
+        val nodeCollection = NodeCollection(NodeCollectionID(0))
+        animation.addNodeCollection(nodeCollection)
+        animation.nodeCollectionID++
+        val nodes = (0 until 6).map { animation.newNode(it * 10f, (it % 3).toFloat(), 0) }
+        for (index in 0 until nodes.size - 1) {
+            animation.nodeEdgeHandler.addEdge(nodes[index], nodes[index + 1], 0)
+        }
+        return Pair(animation, nodeCollection)
+    }
+
+    private fun positions(nodeCollection: NodeCollection, time: Int): List<Pair<Float, Float>> {
+        return nodeCollection.interpolator.setPoints[time]!!.nodes.map { Pair(it.position.x, it.position.y) }
+    }
+
+    @Test
+    fun holdsShareNodesUntilEdited() {
+        val (animation, nodeCollection) = animation()
+        nodeCollection.holdValueUntil(100)
+        nodeCollection.holdValueUntil(200) // Holds the hold, so the set point at 0
+        assertEquals(6, animation.nodes.size)
+        assertEquals(mapOf(100 to 0, 200 to 0), nodeCollection.heldFrom)
+        assertSame(nodeCollection.interpolator.setPoints[0]!!.nodes, nodeCollection.interpolator.setPoints[200]!!.nodes)
+
+        nodeCollection.makeHeldEditable(100, animation)
+        assertEquals(12, animation.nodes.size)
+        assertEquals(mapOf(200 to 0), nodeCollection.heldFrom)
+        assertEquals(positions(nodeCollection, 0), positions(nodeCollection, 100))
+
+        val before = positions(nodeCollection, 0)
+        val last = animation.nodesAt(0).last()
+        animation.nodeEdgeHandler.insert(animation.nodesAt(0).first(), animation.newNode(5f, 50f, 0))
+        animation.deleteObject(last)
+        assertEquals(6, nodeCollection.interpolator.setPoints[0]!!.nodes.size)
+        assertEquals(before, positions(nodeCollection, 200)) // Given its own nodes before the edit
+        assertEquals(emptyMap(), nodeCollection.heldFrom)
+        assertEquals(listOf(nodeCollection), animation.getParents(nodeCollection.interpolator.setPoints[200]!!.nodes.first()))
+    }
+
+    // Files saved when holds were snapshots of positions. A snapshot that still matches its set point becomes a reference to it, one that does not keeps its positions in real nodes
+    @Test
+    fun loadsSnapshotHolds() {
+        val (animation, nodeCollection) = animation()
+        val source = positions(nodeCollection, 0)
+        nodeCollection.heldNodes = mutableMapOf(
+            100 to source.mapTo(mutableListOf()) { Node(Coordinate(it.first, it.second), 100, NodeID(-1)) },
+            200 to source.mapTo(mutableListOf()) { Node(Coordinate(it.first, it.second + 40f), 200, NodeID(-1)) }
+        )
+
+        val loaded = FileHandler.fromJson(FileHandler.toJson(animation))
+        loaded.init()
+        val loadedCollection = loaded.getNodeCollection(NodeCollectionID(0))!!
+        assertNull(loadedCollection.heldNodes)
+        assertEquals(mapOf(100 to 0), loadedCollection.heldFrom)
+        assertSame(loadedCollection.interpolator.setPoints[0]!!.nodes, loadedCollection.interpolator.setPoints[100]!!.nodes)
+        assertEquals(source.map { Pair(it.first, it.second + 40f) }, positions(loadedCollection, 200))
+        assertEquals(12, loaded.nodes.size)
+        assertEquals(6, loaded.nodesAt(200).size)
+
+        val saved = FileHandler.fromJson(FileHandler.toJson(loaded)) // Saved again, the hold is only its reference
+        saved.init()
+        val savedCollection = saved.getNodeCollection(NodeCollectionID(0))!!
+        assertEquals(mapOf(100 to 0), savedCollection.heldFrom)
+        assertEquals(source, positions(savedCollection, 100))
+        assertEquals(positions(loadedCollection, 200), positions(savedCollection, 200))
+    }
+}
@@ -0,0 +1,64 @@
+package com.badlogicgames.waranimationmaker.models
+
+import java.util.*
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class NodeEdgeHandlerTest {
+    private fun setPointNodes(animation: Animation): Map<Int, Map<Int, List<Int>>> { // Collection ID to time to the IDs of its set point's nodes
+        return animation.nodeCollections.associate { nodeCollection ->
+            nodeCollection.id.value to nodeCollection.interpolator.setPoints.mapValues { (_, setPoint) -> setPoint.nodes.map { it.id.value } }
+        }
+    }
+
+    // Edits only traverse the component of the nodes they touch. Rebuilding every collection from every node afterwards must not change anything
+    @Test
+    fun incrementalRebuildMatchesFullRebuild() {
+        val random = Random(5)
+        val animation = Animation()
+        animation.init()
+        val handler = animation.nodeEdgeHandler
+        val times = intArrayOf(0, 50, 100)
+        for (collection in 0 until 3) {
+            animation.addNodeCollection(NodeCollection(NodeCollectionID(collection)))
+            animation.nodeCollectionID++
+            for (time in times) {
+                val nodes = (0 until 8).map { animation.newNode(it * 20f, collection * 100f + random.nextInt(30), time) }
+                for (index in 0 until nodes.size - 1) {
+                    handler.addEdge(nodes[index], nodes[index + 1], collection)
+                }
+                if (collection != 1) { // Loops and a line
+                    handler.addEdge(nodes.last(), nodes.first(), collection)
+                }
+            }
+        }
+
+        repeat(200) {
+            val time = times[random.nextInt(times.size)]
+            val nodes = animation.nodesAt(time).filter { it.edges.isNotEmpty() || handler.incomingEdges(it).isNotEmpty() }
+            if (nodes.size < 4) {
+                return@repeat
+            }
+            val node = nodes[random.nextInt(nodes.size)]
+            when (random.nextInt(3)) {
+                0 -> animation.deleteObject(node) // Redirects the edges around it
+                1 -> if (node.edges.isNotEmpty()) {
+                    handler.insert(node, animation.newNode(node.position.x + 5, node.position.y + 5, time))
+                }
+                else -> { // Extends a line's end
+                    val end = nodes.firstOrNull { it.edges.isEmpty() }
+                    val incoming = end?.let { handler.incomingEdges(it).firstOrNull() }
+                    if (end != null && incoming != null) {
+                        handler.addEdge(end, animation.newNode(end.position.x + 20, end.position.y, time), incoming.collectionID.value)
+                    }
+                }
+            }
+
+            val incremental = setPointNodes(animation)
+            for (rebuildTime in times) {
+                handler.updateNodeCollections(rebuildTime, animation.nodeCollections.map { it.id.value }.toSet())
+            }
+            assertEquals(incremental, setPointNodes(animation))
+        }
+    }
+}